@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches branch names against the branch filter of a
+ * {@link JenkinsConfiguration}. An entry of the filter is either an exact
+ * branch name, a glob pattern or a regular expression with the prefix
+ * {@code regex:}. Glob patterns support {@code *} for any characters except
+ * {@code /}, {@code **} for any characters and {@code ?} for a single
+ * character except {@code /}. Exact names are matched with a hash lookup, all
+ * glob patterns are compiled into a single regular expression. Regular
+ * expressions are compiled separately, so that back references keep their
+ * numbering.
+ */
+final class BranchMatcher {
+
+  static final String REGEX_PREFIX = "regex:";
+
+  private static final Logger LOG = LoggerFactory.getLogger(BranchMatcher.class);
+
+  private static final BranchMatcher EMPTY = new BranchMatcher(false, new HashSet<>(), new ArrayList<>());
+
+  private final boolean configured;
+  private final Set<String> names;
+  private final List<Pattern> patterns;
+
+  private BranchMatcher(boolean configured, Set<String> names, List<Pattern> patterns) {
+    this.configured = configured;
+    this.names = names;
+    this.patterns = patterns;
+  }
+
+  /**
+   * Compiles the given branch filter. Invalid regular expressions are logged
+   * and never match, a filter which consists only of invalid expressions
+   * matches no branch at all.
+   *
+   * @param filter entries of the branch filter, may be {@code null}
+   * @return compiled matcher
+   */
+  static BranchMatcher compile(Collection<String> filter) {
+    if (filter == null || filter.isEmpty()) {
+      return EMPTY;
+    }
+
+    Set<String> names = new HashSet<>();
+    List<String> globs = new ArrayList<>();
+    List<Pattern> patterns = new ArrayList<>();
+    for (String entry : filter) {
+      if (entry.startsWith(REGEX_PREFIX)) {
+        Pattern pattern = compileRegex(entry.substring(REGEX_PREFIX.length()));
+        if (pattern != null) {
+          patterns.add(pattern);
+        }
+      } else if (isGlob(entry)) {
+        globs.add(globToRegex(entry));
+      } else {
+        names.add(entry);
+      }
+    }
+
+    if (!globs.isEmpty()) {
+      patterns.add(Pattern.compile("(?:" + String.join(")|(?:", globs) + ")"));
+    }
+    return new BranchMatcher(true, names, patterns);
+  }
+
+  /**
+   * Returns {@code true} if the filter has no entries.
+   */
+  boolean isEmpty() {
+    return !configured;
+  }
+
+  boolean matches(String branch) {
+    if (names.contains(branch)) {
+      return true;
+    }
+    for (Pattern pattern : patterns) {
+      if (pattern.matcher(branch).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Pattern compileRegex(String regex) {
+    try {
+      return Pattern.compile(regex);
+    } catch (PatternSyntaxException ex) {
+      LOG.warn("invalid branch pattern {} never matches", regex, ex);
+      return null;
+    }
+  }
+
+  private static boolean isGlob(String entry) {
+    return entry.indexOf('*') >= 0 || entry.indexOf('?') >= 0;
+  }
+
+  private static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' || c == '?') {
+        appendLiteral(regex, literal);
+        if (c == '?') {
+          regex.append("[^/]");
+        } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+          regex.append(".*");
+          i++;
+        } else {
+          regex.append("[^/]*");
+        }
+      } else {
+        literal.append(c);
+      }
+    }
+    appendLiteral(regex, literal);
+    return regex.toString();
+  }
+
+  private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+      literal.setLength(0);
+    }
+  }
+}
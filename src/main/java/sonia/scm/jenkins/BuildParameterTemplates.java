@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.cloudogu.scm.el.ElParser;
+import com.cloudogu.scm.el.Expression;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Evaluates the values of build parameters. Parsed expressions are cached by
+ * their text, so that the same template is parsed only once and not on every
+ * push. Values without any expression are returned without evaluation.
+ */
+@Singleton
+public class BuildParameterTemplates {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BuildParameterTemplates.class);
+
+  static final int MAXIMUM_SIZE = 1000;
+
+  private final ElParser elParser;
+  private final Cache<String, Expression> expressions = CacheBuilder.newBuilder()
+    .maximumSize(MAXIMUM_SIZE)
+    .build();
+
+  @Inject
+  public BuildParameterTemplates(ElParser elParser) {
+    this.elParser = elParser;
+  }
+
+  /**
+   * Evaluates the value of a build parameter.
+   *
+   * @param value value of the build parameter, which may contain expressions
+   * @param env   environment for the evaluation
+   * @return evaluated value
+   */
+  public String evaluate(String value, Map<String, Object> env) {
+    if (isLiteral(value)) {
+      return value;
+    }
+    return parse(value).evaluate(env);
+  }
+
+  /**
+   * Parses the build parameters of the configuration and of all its jobs in
+   * advance, so that the first push after the configuration was stored finds
+   * them in the cache.
+   *
+   * @param configuration jenkins repository configuration
+   */
+  public void warm(JenkinsConfiguration configuration) {
+    warm(configuration.getBuildParameters());
+    for (JenkinsJob job : configuration.getJobs()) {
+      warm(job.getBuildParameters());
+    }
+  }
+
+  private void warm(Collection<BuildParameter> parameters) {
+    for (BuildParameter parameter : parameters) {
+      if (!isLiteral(parameter.getValue())) {
+        try {
+          parse(parameter.getValue());
+        } catch (RuntimeException ex) {
+          LOG.warn("failed to parse value of build parameter {}", parameter.getName(), ex);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  long size() {
+    return expressions.size();
+  }
+
+  private Expression parse(String value) {
+    try {
+      return expressions.get(value, () -> elParser.parse(value));
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw new IllegalStateException("failed to parse build parameter " + value, ex.getCause());
+    }
+  }
+
+  private boolean isLiteral(String value) {
+    return value != null
+      && value.indexOf('$') < 0
+      && value.indexOf('#') < 0
+      && value.indexOf('\\') < 0;
+  }
+}
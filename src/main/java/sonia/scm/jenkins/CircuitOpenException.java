@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown if a request is not sent, because the circuit breaker of the
+ * jenkins server is open.
+ */
+class CircuitOpenException extends IOException {
+
+  private final transient Duration retryAfter;
+
+  CircuitOpenException(String serverUrl, Duration retryAfter) {
+    super("circuit breaker for jenkins server " + serverUrl + " is open");
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * Returns the time until the circuit lets the next request through.
+   */
+  Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
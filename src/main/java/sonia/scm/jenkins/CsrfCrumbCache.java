@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static sonia.scm.jenkins.CsrfCrumbRequester.getJenkinsCsrfCrumb;
+
+/**
+ * Caches csrf crumbs per jenkins server and user, so that a steady stream of
+ * requests does not need a second round-trip to the crumb issuer for every
+ * request. The time to live is read from
+ * {@link GlobalJenkinsConfiguration#getCrumbCacheTtl()}, a ttl of zero
+ * disables the cache.
+ * <p>
+ * Concurrent callers which need a crumb for the same server and user share a
+ * single in-flight request to the crumb issuer (even if caching is disabled).
+ * If the crumb issuer could not be reached, all of them fail with the same
+ * {@link IOException}, so that the request itself is not sent to an
+ * unreachable server. Requests to the crumb issuer and callers which joined
+ * an in-flight request are recorded with the {@link JenkinsMetrics}.
+ */
+@Slf4j
+@Singleton
+class CsrfCrumbCache {
+
+  static final int DEFAULT_TTL = 300;
+
+  private final JenkinsContext context;
+  private final JenkinsMetrics metrics;
+  private final Ticker ticker;
+  private final Map<Key, Entry> crumbs = new ConcurrentHashMap<>();
+  private final Map<Key, CompletableFuture<CsrfCrumb>> inFlight = new ConcurrentHashMap<>();
+
+  @Inject
+  CsrfCrumbCache(JenkinsContext context, JenkinsMetrics metrics) {
+    this(context, metrics, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  CsrfCrumbCache(JenkinsContext context, JenkinsMetrics metrics, Ticker ticker) {
+    this.context = context;
+    this.metrics = metrics;
+    this.ticker = ticker;
+  }
+
+  /**
+   * Returns a cached crumb or fetches a new one from the jenkins server.
+   *
+   * @return crumb or {@code null} if jenkins has not returned a crumb
+   * @throws IOException if the jenkins server could not be reached
+   */
+  CsrfCrumb get(AdvancedHttpClient client, String baseUrl, String username, String apiToken) throws IOException {
+    long ttl = TimeUnit.SECONDS.toNanos(context.getConfiguration().getCrumbCacheTtl());
+    Key key = Key.of(baseUrl, username);
+    CsrfCrumb cached = getCached(key, ttl);
+    if (cached != null) {
+      return cached;
+    }
+
+    CompletableFuture<CsrfCrumb> flight = new CompletableFuture<>();
+    CompletableFuture<CsrfCrumb> existing = inFlight.putIfAbsent(key, flight);
+    if (existing != null) {
+      metrics.crumbCollapsed(key.getBaseUrl());
+      log.trace("wait for in-flight csrf crumb request to {}", key.getBaseUrl());
+      return join(existing);
+    }
+
+    try {
+      // another flight could have filled the cache since our first lookup
+      CsrfCrumb crumb = getCached(key, ttl);
+      if (crumb == null) {
+        crumb = fetch(client, key, baseUrl, username, apiToken, ttl);
+      }
+      flight.complete(crumb);
+      return crumb;
+    } catch (Throwable ex) {
+      // every failure must complete the flight, otherwise the waiting requests would block forever
+      flight.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  private CsrfCrumb join(CompletableFuture<CsrfCrumb> flight) throws IOException {
+    try {
+      return flight.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  private CsrfCrumb getCached(Key key, long ttl) {
+    if (ttl > 0) {
+      Entry entry = crumbs.get(key);
+      if (entry != null && entry.getExpiresAt() - ticker.read() > 0) {
+        log.trace("use cached csrf crumb for {}", key.getBaseUrl());
+        return entry.getCrumb();
+      }
+    }
+    return null;
+  }
+
+  private CsrfCrumb fetch(AdvancedHttpClient client, Key key, String baseUrl, String username, String apiToken, long ttl) throws IOException {
+    Timer.Sample sample = metrics.start();
+    String status = JenkinsMetrics.STATUS_IO_ERROR;
+    CsrfCrumb crumb;
+    try {
+      crumb = getJenkinsCsrfCrumb(client, baseUrl, username, apiToken);
+      status = crumb != null ? "success" : "missing";
+    } finally {
+      metrics.crumb(sample, key.getBaseUrl(), status);
+    }
+    if (crumb != null && ttl > 0) {
+      crumbs.put(key, new Entry(crumb, ticker.read() + ttl));
+    } else {
+      crumbs.remove(key);
+    }
+    return crumb;
+  }
+
+  /**
+   * Removes the cached crumb, e.g. because jenkins has rejected it.
+   */
+  void invalidate(String baseUrl, String username) {
+    crumbs.remove(Key.of(baseUrl, username));
+  }
+
+  @Value
+  private static class Key {
+    String baseUrl;
+    String username;
+
+    static Key of(String baseUrl, String username) {
+      String url = baseUrl.endsWith("/") ? baseUrl : baseUrl.concat("/");
+      return new Key(url, username);
+    }
+  }
+
+  @Value
+  private static class Entry {
+    CsrfCrumb crumb;
+    long expiresAt;
+  }
+}
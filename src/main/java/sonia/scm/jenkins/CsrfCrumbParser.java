@@ -16,96 +16,171 @@
 
 package sonia.scm.jenkins;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import java.io.IOException;
 import java.io.InputStream;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 import sonia.scm.util.Util;
 
 /**
  * Parses the content of a jenkins http response to get a csrf crumb.
+ * The parser reads the response as a stream and stops as soon as the crumb
+ * and the name of the crumb request field have been read. Both the xml
+ * ({@code crumbIssuer/api/xml}) and the json ({@code crumbIssuer/api/json})
+ * representation of the crumb issuer are supported.
  *
  * @author Sebastian Sdorra
  * @since 1.13
  */
 public class CsrfCrumbParser
 {
-  
+
   /**
    * the logger for CsrfCrumbParser
    */
   private static final Logger logger = LoggerFactory.getLogger(CsrfCrumbParser.class);
 
+  private static final String ELEMENT_CRUMB = "crumb";
+  private static final String ELEMENT_CRUMB_REQUEST_FIELD = "crumbRequestField";
+
+  /**
+   * shared factories, both are thread safe after they are configured
+   */
+  private static final XMLInputFactory XML_FACTORY = createXmlFactory();
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
   private CsrfCrumbParser()
   {
   }
-  
+
+  private static XMLInputFactory createXmlFactory()
+  {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
   /**
-   * Parses the input stream and returns a {@link CsrfCrumb} object or {@code null}.
-   * 
+   * Parses the xml input stream and returns a {@link CsrfCrumb} object or {@code null}.
+   *
    * @param content input stream
-   * 
+   *
    * @return {@link CsrfCrumb} object or {@code null}
-   * @throws IOException 
+   * @throws IOException
    */
   public static CsrfCrumb parse(InputStream content) throws IOException
   {
-    Document doc = parseToDocument(content);
+    String crumb = null;
+    String field = null;
 
-    String crumb = getContent(doc, "crumb");
-    String field = getContent(doc, "crumbRequestField");
-    
-    CsrfCrumb csrfCrumb = null;
-    if ( Util.isNotEmpty(crumb) && Util.isNotEmpty(field) )
+    XMLStreamReader reader = null;
+    try
     {
-      csrfCrumb = new CsrfCrumb(crumb, field);
-    } 
-    else 
+      reader = XML_FACTORY.createXMLStreamReader(content);
+      while (reader.hasNext() && (crumb == null || field == null))
+      {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT)
+        {
+          String name = reader.getLocalName();
+          if (crumb == null && ELEMENT_CRUMB.equals(name))
+          {
+            crumb = reader.getElementText();
+          }
+          else if (field == null && ELEMENT_CRUMB_REQUEST_FIELD.equals(name))
+          {
+            field = reader.getElementText();
+          }
+        }
+      }
+    }
+    catch (XMLStreamException ex)
     {
-      logger.warn("failed to extract csrf crumb fields");
+      throw new IOException("failed to parse document", ex);
     }
-    
-    return csrfCrumb;
+    finally
+    {
+      close(reader);
+    }
+
+    return createCrumb(crumb, field);
   }
-  
-  private static String getContent(Document doc, String name)
+
+  /**
+   * Parses the json input stream and returns a {@link CsrfCrumb} object or {@code null}.
+   *
+   * @param content input stream
+   *
+   * @return {@link CsrfCrumb} object or {@code null}
+   * @throws IOException
+   */
+  public static CsrfCrumb parseJson(InputStream content) throws IOException
   {
-    String result = null;
-    NodeList list = doc.getElementsByTagName(name);
-    for (int i = 0; i<list.getLength(); i++ )
+    String crumb = null;
+    String field = null;
+
+    try (JsonParser parser = JSON_FACTORY.createParser(content))
     {
-      Node node = list.item(i);
-      if (node.getNodeType() == Node.ELEMENT_NODE)
+      if (parser.nextToken() != JsonToken.START_OBJECT)
       {
-        result = node.getTextContent();
-        break;
+        throw new IOException("crumb response is not a json object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME && (crumb == null || field == null))
+      {
+        String name = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if (ELEMENT_CRUMB.equals(name) && value == JsonToken.VALUE_STRING)
+        {
+          crumb = parser.getText();
+        }
+        else if (ELEMENT_CRUMB_REQUEST_FIELD.equals(name) && value == JsonToken.VALUE_STRING)
+        {
+          field = parser.getText();
+        }
+        else
+        {
+          parser.skipChildren();
+        }
       }
     }
-    return result;
+
+    return createCrumb(crumb, field);
   }
-  
-  private static Document parseToDocument(InputStream content) throws IOException
+
+  private static CsrfCrumb createCrumb(String crumb, String field)
   {
-    try 
+    CsrfCrumb csrfCrumb = null;
+    if ( Util.isNotEmpty(crumb) && Util.isNotEmpty(field) )
     {
-      DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-      return docBuilder.parse(content);
-    } 
-    catch (ParserConfigurationException ex)
+      csrfCrumb = new CsrfCrumb(crumb, field);
+    }
+    else
     {
-      throw new IOException("failed to parse document", ex);
-    } 
-    catch (SAXException ex)
+      logger.warn("failed to extract csrf crumb fields");
+    }
+
+    return csrfCrumb;
+  }
+
+  private static void close(XMLStreamReader reader)
+  {
+    if (reader != null)
     {
-      throw new IOException("failed to parse document", ex);
+      try
+      {
+        reader.close();
+      }
+      catch (XMLStreamException ex)
+      {
+        logger.debug("failed to close xml stream reader", ex);
+      }
     }
   }
 }
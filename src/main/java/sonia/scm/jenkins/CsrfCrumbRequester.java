@@ -34,7 +34,13 @@ import static sonia.scm.jenkins.Urls.escape;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class CsrfCrumbRequester {
 
-  static CsrfCrumb getJenkinsCsrfCrumb(AdvancedHttpClient client, String baseUrl, String username, String apiToken) {
+  /**
+   * Fetches a csrf crumb from the jenkins server.
+   *
+   * @return crumb or {@code null} if jenkins has not returned a crumb
+   * @throws IOException if the jenkins server could not be reached
+   */
+  static CsrfCrumb getJenkinsCsrfCrumb(AdvancedHttpClient client, String baseUrl, String username, String apiToken) throws IOException {
     String url = createCrumbUrl(baseUrl);
     log.debug("fetch csrf crumb from {}", url);
 
@@ -42,16 +48,16 @@ public class CsrfCrumbRequester {
     appendAuthenticationHeader(request, username, apiToken);
 
     CsrfCrumb crumb = null;
-    try {
-      AdvancedHttpResponse response = request.request();
-      int sc = response.getStatus();
-      if (sc != 200) {
-        log.warn("jenkins crumb endpoint returned status code {}", sc);
-      } else {
+    AdvancedHttpResponse response = request.request();
+    int sc = response.getStatus();
+    if (sc != 200) {
+      log.warn("jenkins crumb endpoint returned status code {}", sc);
+    } else {
+      try {
         crumb = parseCsrfCrumbResponse(response);
+      } catch (IOException ex) {
+        log.warn("failed to parse csrf crumb", ex);
       }
-    } catch (IOException ex) {
-      log.warn("failed to fetch csrf crumb", ex);
     }
 
     return crumb;
@@ -62,7 +68,7 @@ public class CsrfCrumbRequester {
     InputStream content = null;
     try {
       content = response.contentAsStream();
-      csrfCrumb = CsrfCrumbParser.parse(content);
+      csrfCrumb = CsrfCrumbParser.parseJson(content);
     } finally {
       IOUtil.close(content);
     }
@@ -70,7 +76,7 @@ public class CsrfCrumbRequester {
   }
 
   private static String createCrumbUrl(String url) {
-    return createBaseUrl(url).concat("crumbIssuer/api/xml");
+    return createBaseUrl(url).concat("crumbIssuer/api/json");
   }
 
   private static String createBaseUrl(String url) {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Value;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent deliveries to jenkins in memory, so that it is
+ * possible to find out why a build was not triggered without reading the
+ * logs. Every attempt of the {@link JenkinsDispatcher} is recorded in a global
+ * ring buffer and, if the request was caused by a repository, in a ring buffer
+ * for this repository. The ring buffers have a fixed size and the number of
+ * repositories is limited, so the history needs constant memory regardless of
+ * the traffic. The target url is recorded without query and user info,
+ * because both could contain tokens.
+ */
+@Singleton
+public class DeliveryHistory {
+
+  static final int GLOBAL_CAPACITY = 200;
+  static final int REPOSITORY_CAPACITY = 20;
+  static final int MAX_REPOSITORIES = 1000;
+
+  private final Clock clock;
+  private final Ring global = new Ring(GLOBAL_CAPACITY);
+  private final Cache<String, Ring> repositories = CacheBuilder.newBuilder()
+    .maximumSize(MAX_REPOSITORIES)
+    .build();
+
+  @Inject
+  public DeliveryHistory() {
+    this(Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  DeliveryHistory(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Records a single attempt to send the request.
+   *
+   * @param request    request which was sent
+   * @param statusCode status code of the jenkins response or {@code null} if
+   *                   jenkins has not answered
+   * @param failure    failure of the attempt or {@code null}, only its type is
+   *                   stored, because messages could contain the request url
+   *                   with its token
+   * @param latency    duration of the attempt
+   * @param retries    number of previous attempts of the same request
+   */
+  void record(JenkinsRequest request, Integer statusCode, Exception failure, Duration latency, int retries) {
+    Delivery delivery = new Delivery(
+      clock.instant(),
+      request.getRepository(),
+      request.getType(),
+      Urls.withoutSecrets(request.getUrl()),
+      statusCode,
+      failure != null ? failure.getClass().getName() : null,
+      latency.toMillis(),
+      retries
+    );
+    global.add(delivery);
+    if (request.getRepositoryId() != null) {
+      repository(request.getRepositoryId()).add(delivery);
+    }
+  }
+
+  /**
+   * Returns the recent deliveries of all repositories, newest first.
+   */
+  List<Delivery> getDeliveries() {
+    return global.list();
+  }
+
+  /**
+   * Returns the recent deliveries of the repository, newest first.
+   */
+  List<Delivery> getDeliveries(String repositoryId) {
+    Ring ring = repositories.getIfPresent(repositoryId);
+    return ring != null ? ring.list() : Collections.emptyList();
+  }
+
+  private Ring repository(String repositoryId) {
+    try {
+      return repositories.get(repositoryId, () -> new Ring(REPOSITORY_CAPACITY));
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("could not create delivery history", ex);
+    }
+  }
+
+  @Value
+  public static class Delivery {
+    Instant timestamp;
+    String repository;
+    String type;
+    String url;
+    Integer statusCode;
+    String error;
+    long latency;
+    int retries;
+  }
+
+  private static class Ring {
+
+    private final AtomicReferenceArray<Delivery> slots;
+    private final AtomicLong next = new AtomicLong();
+
+    private Ring(int capacity) {
+      this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(Delivery delivery) {
+      long index = next.getAndIncrement();
+      slots.set((int) (index % slots.length()), delivery);
+    }
+
+    List<Delivery> list() {
+      long last = next.get();
+      int count = (int) Math.min(last, slots.length());
+      List<Delivery> deliveries = new ArrayList<>(count);
+      for (long index = last - 1; index >= last - count; index--) {
+        Delivery delivery = slots.get((int) (index % slots.length()));
+        if (delivery != null) {
+          deliveries.add(delivery);
+        }
+      }
+      return deliveries;
+    }
+  }
+}
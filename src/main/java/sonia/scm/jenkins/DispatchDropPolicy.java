@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+/**
+ * Defines what happens with a jenkins request, if the dispatch queue is full.
+ */
+public enum DispatchDropPolicy {
+  /**
+   * The request is executed synchronously by the thread which has created it.
+   */
+  CALLER_RUNS,
+  /**
+   * The new request is dropped.
+   */
+  DISCARD_NEWEST,
+  /**
+   * The oldest queued request is dropped in favour of the new one.
+   */
+  DISCARD_OLDEST
+}
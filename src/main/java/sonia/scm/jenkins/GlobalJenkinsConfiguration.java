@@ -28,6 +28,8 @@ import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.util.ArrayList;
+import java.util.List;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlRootElement(name = "jenkins-config")
@@ -60,6 +62,87 @@ public class GlobalJenkinsConfiguration implements Validateable {
 
   private String url;
 
+  /**
+   * Additional jenkins servers which are notified like the server above.
+   */
+  @XmlElement(name = "additional-server")
+  private List<JenkinsServer> additionalServers = new ArrayList<>();
+
+  @XmlElement(name = "dispatch-queue-size")
+  private int dispatchQueueSize = JenkinsDispatcher.DEFAULT_QUEUE_SIZE;
+
+  @XmlElement(name = "dispatch-worker-count")
+  private int dispatchWorkerCount = JenkinsDispatcher.DEFAULT_WORKER_COUNT;
+
+  @XmlElement(name = "dispatch-drop-policy")
+  private DispatchDropPolicy dispatchDropPolicy = DispatchDropPolicy.CALLER_RUNS;
+
+  @XmlElement(name = "dispatch-execution-mode")
+  private DispatchExecutionMode dispatchExecutionMode = DispatchExecutionMode.PLATFORM_THREADS;
+
+  /**
+   * Maximum number of attempts to deliver a request, one disables retries.
+   */
+  @XmlElement(name = "dispatch-max-attempts")
+  private int dispatchMaxAttempts = JenkinsDispatcher.DEFAULT_MAX_ATTEMPTS;
+
+  /**
+   * Window in seconds in which repeated triggers of the same job are
+   * coalesced, zero disables coalescing.
+   */
+  @XmlElement(name = "dispatch-coalesce-window")
+  private int dispatchCoalesceWindow = 0;
+
+  /**
+   * Time to live of cached csrf crumbs in seconds, zero disables the cache.
+   */
+  @XmlElement(name = "crumb-cache-ttl")
+  private int crumbCacheTtl = CsrfCrumbCache.DEFAULT_TTL;
+
+  /**
+   * Seconds without further authorization or rename events, before a
+   * navigator event is sent. Zero sends every event immediately.
+   */
+  @XmlElement(name = "navigator-event-quiet-period")
+  private int navigatorEventQuietPeriod = NavigatorEventDebouncer.DEFAULT_QUIET_PERIOD;
+
+  /**
+   * Maximum seconds a navigator event is delayed by a burst of events.
+   */
+  @XmlElement(name = "navigator-event-max-delay")
+  private int navigatorEventMaxDelay = NavigatorEventDebouncer.DEFAULT_MAX_DELAY;
+
+  /**
+   * Sends events in batches to jenkins servers which support them.
+   */
+  @XmlElement(name = "event-batching")
+  private boolean eventBatching = false;
+
+  /**
+   * Maximum number of events in a batch.
+   */
+  @XmlElement(name = "event-batch-size")
+  private int eventBatchSize = JenkinsEventBatcher.DEFAULT_BATCH_SIZE;
+
+  /**
+   * Maximum milliseconds an event waits for further events of its batch.
+   */
+  @XmlElement(name = "event-batch-max-delay")
+  private int eventBatchMaxDelay = JenkinsEventBatcher.DEFAULT_MAX_DELAY;
+
+  /**
+   * Sends events as json body instead of an url encoded form field.
+   */
+  @XmlElement(name = "event-json-content")
+  private boolean eventJsonContent = false;
+
+  /**
+   * Maximum number of changed paths sent with a subversion trigger, at least
+   * one, zero for no limit. Larger change lists are reduced to their parent directories.
+   */
+  @XmlElement(name = "subversion-change-list-limit")
+  private int subversionChangeListLimit = 0;
+
   public GlobalJenkinsConfiguration(String url, boolean disableGitTrigger, boolean disableMercurialTrigger, boolean disableSubversionTrigger, boolean disableRepositoryConfiguration) {
     this.url = url;
     this.disableGitTrigger = disableGitTrigger;
@@ -73,4 +156,21 @@ public class GlobalJenkinsConfiguration implements Validateable {
     return Util.isNotEmpty(url);
   }
 
+  /**
+   * Returns the server of this configuration followed by all valid additional
+   * servers.
+   */
+  List<JenkinsServer> getServers() {
+    List<JenkinsServer> servers = new ArrayList<>();
+    servers.add(new JenkinsServer(getUrl(), getUsername(), getApiToken()));
+    if (getAdditionalServers() != null) {
+      for (JenkinsServer server : getAdditionalServers()) {
+        if (server.isValid()) {
+          servers.add(server);
+        }
+      }
+    }
+    return servers;
+  }
+
 }
@@ -18,9 +18,16 @@ package sonia.scm.jenkins;
 
 import de.otto.edison.hal.HalRepresentation;
 import de.otto.edison.hal.Links;
+import jakarta.validation.constraints.Min;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
+/**
+ * Global configuration of the plugin. Numeric settings are optional, settings
+ * which are missing in an update keep their default value.
+ */
 @Getter
 @Setter
 @SuppressWarnings("java:S2160") // wo do not need equals and hashcode for dto
@@ -35,6 +42,31 @@ public class GlobalJenkinsConfigurationDto extends HalRepresentation {
   private String username;
   private String apiToken;
   private String gitAuthenticationToken;
+  private List<JenkinsServerDto> additionalServers;
+  @Min(1)
+  private Integer dispatchQueueSize;
+  @Min(1)
+  private Integer dispatchWorkerCount;
+  private DispatchDropPolicy dispatchDropPolicy;
+  private DispatchExecutionMode dispatchExecutionMode;
+  @Min(1)
+  private Integer dispatchMaxAttempts;
+  @Min(0)
+  private Integer dispatchCoalesceWindow;
+  @Min(0)
+  private Integer crumbCacheTtl;
+  @Min(0)
+  private Integer navigatorEventQuietPeriod;
+  @Min(0)
+  private Integer navigatorEventMaxDelay;
+  private boolean eventBatching;
+  @Min(1)
+  private Integer eventBatchSize;
+  @Min(1)
+  private Integer eventBatchMaxDelay;
+  private boolean eventJsonContent;
+  @Min(0)
+  private int subversionChangeListLimit;
 
   @Override
   @SuppressWarnings("squid:S1185") // We want to have this method available in this package
@@ -55,6 +55,13 @@ public abstract class GlobalJenkinsConfigurationMapper {
     if (StringUtils.isNotEmpty(target.getGitAuthenticationToken())) {
       target.setGitAuthenticationToken(DUMMY_SECRET);
     }
+    if (target.getAdditionalServers() != null) {
+      for (JenkinsServerDto server : target.getAdditionalServers()) {
+        if (StringUtils.isNotEmpty(server.getApiToken())) {
+          server.setApiToken(DUMMY_SECRET);
+        }
+      }
+    }
   }
 
   @AfterMapping
@@ -65,6 +72,25 @@ public abstract class GlobalJenkinsConfigurationMapper {
     if (DUMMY_SECRET.equals(target.getGitAuthenticationToken())) {
       target.setGitAuthenticationToken(oldConfiguration.getGitAuthenticationToken());
     }
+    if (target.getAdditionalServers() != null) {
+      for (JenkinsServer server : target.getAdditionalServers()) {
+        if (DUMMY_SECRET.equals(server.getApiToken())) {
+          server.setApiToken(findOldApiToken(oldConfiguration, server.getUrl()));
+        }
+      }
+    }
+  }
+
+  private String findOldApiToken(GlobalJenkinsConfiguration oldConfiguration, String url) {
+    if (oldConfiguration.getAdditionalServers() == null) {
+      return null;
+    }
+    return oldConfiguration.getAdditionalServers()
+      .stream()
+      .filter(server -> StringUtils.equals(server.getUrl(), url))
+      .map(JenkinsServer::getApiToken)
+      .findFirst()
+      .orElse(null);
   }
 
   @AfterMapping
@@ -74,6 +100,8 @@ public abstract class GlobalJenkinsConfigurationMapper {
       linksBuilder.single(link("update", update()));
     }
     if (ConfigurationPermissions.read(NAME).isPermitted()) {
+      linksBuilder.single(link("circuitBreakers", circuitBreakers()));
+      linksBuilder.single(link("deliveries", deliveries()));
       target.add(linksBuilder.build());
     }
   }
@@ -83,6 +111,16 @@ public abstract class GlobalJenkinsConfigurationMapper {
     return linkBuilder.method("getGlobalJenkinsConfig").parameters().href();
   }
 
+  private String circuitBreakers() {
+    LinkBuilder linkBuilder = new LinkBuilder(scmPathInfoStore.get(), JenkinsConfigurationResource.class);
+    return linkBuilder.method("getCircuitBreakerStates").parameters().href();
+  }
+
+  private String deliveries() {
+    LinkBuilder linkBuilder = new LinkBuilder(scmPathInfoStore.get(), JenkinsConfigurationResource.class);
+    return linkBuilder.method("getDeliveries").parameters().href();
+  }
+
   private String update() {
     LinkBuilder linkBuilder = new LinkBuilder(scmPathInfoStore.get(), JenkinsConfigurationResource.class);
     return linkBuilder.method("updateGlobalJenkinsConfig").parameters().href();
@@ -19,12 +19,9 @@ package sonia.scm.jenkins;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import sonia.scm.net.ahc.AdvancedHttpClient;
 import sonia.scm.net.ahc.BaseHttpRequest;
 import sonia.scm.util.Util;
 
-import static sonia.scm.jenkins.CsrfCrumbRequester.getJenkinsCsrfCrumb;
-
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class HeaderAppenders {
@@ -42,8 +39,7 @@ public class HeaderAppenders {
     }
   }
 
-  static void appendCsrfCrumbHeader(AdvancedHttpClient client, BaseHttpRequest request, String url, String username, String apiToken) {
-    CsrfCrumb crumb = getJenkinsCsrfCrumb(client, url, username, apiToken);
+  static void appendCsrfCrumbHeader(BaseHttpRequest request, CsrfCrumb crumb) {
     if (crumb != null) {
       log.debug("add csrf crumb to api request");
       request.header(crumb.getCrumbRequestField(), crumb.getCrumb());
@@ -67,7 +67,7 @@ public class JenkinsBranchAndTagEventRelay {
           eventDto.setDeletedTags(context.getTagProvider().getDeletedTags().stream().map(TagDto::new).collect(toList()));
         }
 
-        jenkinsEventRelay.send(repository, eventDto);
+        jenkinsEventRelay.send(event, eventDto);
       }
   }
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Circuit breaker per jenkins server. After {@link #FAILURE_THRESHOLD}
+ * consecutive failures the circuit opens and requests to the server fail
+ * immediately with a {@link CircuitOpenException}, instead of waiting for the
+ * connect timeout again. After {@link #OPEN_DURATION} a single request is let
+ * through as probe: if it succeeds the circuit closes, otherwise it opens
+ * again. The breaker is used by the {@link JenkinsRequestSender}, so it covers
+ * the hook handlers, the event relay and the crumb requests.
+ */
+@Slf4j
+@Singleton
+public class JenkinsCircuitBreaker {
+
+  static final int FAILURE_THRESHOLD = 5;
+  static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+  static final Duration PROBE_WAIT = Duration.ofSeconds(1);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final Clock clock;
+  private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+  @Inject
+  public JenkinsCircuitBreaker() {
+    this(Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  JenkinsCircuitBreaker(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Checks whether a request to the server could be sent. Every successful
+   * call must be followed by {@link #success(String)} or
+   * {@link #failure(String)}.
+   *
+   * @param serverUrl base url of the jenkins server
+   * @throws CircuitOpenException if the circuit is open, the exception tells
+   *                              when the next request could be sent
+   */
+  void acquire(String serverUrl) throws CircuitOpenException {
+    Duration retryAfter = circuit(serverUrl).acquire(clock.instant());
+    if (!retryAfter.isZero()) {
+      throw new CircuitOpenException(serverUrl, retryAfter);
+    }
+  }
+
+  void success(String serverUrl) {
+    circuit(serverUrl).success();
+  }
+
+  void failure(String serverUrl) {
+    circuit(serverUrl).failure(clock.instant());
+  }
+
+  /**
+   * Returns the state of the circuits of all servers which have been called.
+   */
+  List<CircuitState> getStates() {
+    return circuits.entrySet().stream()
+      .map(entry -> entry.getValue().state(entry.getKey()))
+      .sorted(Comparator.comparing(CircuitState::getServerUrl))
+      .collect(Collectors.toList());
+  }
+
+  private Circuit circuit(String serverUrl) {
+    return circuits.computeIfAbsent(Urls.withTrailingSlash(serverUrl), key -> new Circuit());
+  }
+
+  @Value
+  public static class CircuitState {
+    String serverUrl;
+    State state;
+    int consecutiveFailures;
+    Instant openedAt;
+  }
+
+  private static class Circuit {
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+
+    /**
+     * Returns {@link Duration#ZERO} if the request could be sent, otherwise
+     * the time until the next request could be sent.
+     */
+    synchronized Duration acquire(Instant now) {
+      if (state == State.CLOSED) {
+        return Duration.ZERO;
+      }
+      if (state == State.OPEN) {
+        Instant closes = openedAt.plus(OPEN_DURATION);
+        if (!now.isBefore(closes)) {
+          state = State.HALF_OPEN;
+          return Duration.ZERO;
+        }
+        return Duration.between(now, closes);
+      }
+      // a probe is in flight
+      return PROBE_WAIT;
+    }
+
+    synchronized void success() {
+      state = State.CLOSED;
+      consecutiveFailures = 0;
+      openedAt = null;
+    }
+
+    synchronized void failure(Instant now) {
+      consecutiveFailures++;
+      if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+        if (state != State.OPEN) {
+          log.warn("opening circuit breaker after {} consecutive failures", consecutiveFailures);
+        }
+        state = State.OPEN;
+        openedAt = now;
+      }
+    }
+
+    synchronized CircuitState state(String serverUrl) {
+      return new CircuitState(serverUrl, state, consecutiveFailures, openedAt);
+    }
+  }
+}
@@ -23,9 +23,12 @@ import sonia.scm.xml.XmlEncryptionAdapter;
 
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -49,6 +52,13 @@ public class JenkinsConfiguration implements Validateable {
   private String username;
   private boolean csrf;
   private Set<BuildParameter> buildParameters;
+  @XmlElement(name = "additional-target")
+  private List<JenkinsTarget> additionalTargets;
+  @XmlElement(name = "job")
+  private List<JenkinsJob> jobs;
+
+  @EqualsAndHashCode.Exclude
+  private transient volatile BranchMatcher branchMatcher;
 
   /**
    * Returns the api token which is used for authentication.
@@ -64,7 +74,8 @@ public class JenkinsConfiguration implements Validateable {
   /**
    * Returns comma separated list of branches. The hook will only be executed,
    * if the branch is listed. If the set is empty the hook will be executed on
-   * every push.
+   * every push. Entries could be exact branch names, glob patterns or regular
+   * expressions with the prefix {@code regex:}.
    *
    * @return comma separated list of branches
    * @since 1.10
@@ -73,6 +84,21 @@ public class JenkinsConfiguration implements Validateable {
     return branches;
   }
 
+  /**
+   * Returns the compiled matcher for the branches. The matcher is compiled
+   * once and reused until the branches are changed.
+   *
+   * @return matcher for the branches
+   */
+  BranchMatcher getBranchMatcher() {
+    BranchMatcher matcher = branchMatcher;
+    if (matcher == null) {
+      matcher = BranchMatcher.compile(branches);
+      branchMatcher = matcher;
+    }
+    return matcher;
+  }
+
   /**
    * Returns the name of the jenkins project.
    *
@@ -128,12 +154,66 @@ public class JenkinsConfiguration implements Validateable {
     return buildParameters;
   }
 
+  /**
+   * Returns additional jobs which are triggered with the same branches and
+   * build parameters, e.g. on other jenkins servers.
+   *
+   * @return additional targets
+   */
+  public List<JenkinsTarget> getAdditionalTargets() {
+    if (additionalTargets == null) {
+      return new ArrayList<>();
+    }
+    return additionalTargets;
+  }
+
+  /**
+   * Returns the job of this configuration followed by all valid additional
+   * targets.
+   *
+   * @return all targets of the repository
+   */
+  List<JenkinsTarget> getTargets() {
+    List<JenkinsTarget> targets = new ArrayList<>();
+    targets.add(new JenkinsTarget(url, project, token, username, apiToken, csrf));
+    for (JenkinsTarget target : getAdditionalTargets()) {
+      if (target.isValid()) {
+        targets.add(target);
+      }
+    }
+    return targets;
+  }
+
+  /**
+   * Returns additional jobs on the jenkins server of this configuration, each
+   * with its own branches and build parameters.
+   *
+   * @return additional jobs
+   */
+  public List<JenkinsJob> getJobs() {
+    if (jobs == null) {
+      return new ArrayList<>();
+    }
+    return jobs;
+  }
+
+  /**
+   * Returns the target for a job on the jenkins server of this configuration.
+   *
+   * @param job additional job
+   * @return target of the job
+   */
+  JenkinsTarget getTarget(JenkinsJob job) {
+    return new JenkinsTarget(url, job.getProject(), job.getToken(), username, apiToken, csrf);
+  }
+
   public void setApiToken(String apiToken) {
     this.apiToken = apiToken;
   }
 
   public void setBranches(Set<String> branches) {
     this.branches = branches;
+    this.branchMatcher = null;
   }
 
   public void setProject(String project) {
@@ -160,6 +240,14 @@ public class JenkinsConfiguration implements Validateable {
     this.buildParameters = buildParameters;
   }
 
+  public void setAdditionalTargets(List<JenkinsTarget> additionalTargets) {
+    this.additionalTargets = additionalTargets;
+  }
+
+  public void setJobs(List<JenkinsJob> jobs) {
+    this.jobs = jobs;
+  }
+
   /**
    * Return true, if the configuration is valid.
    *
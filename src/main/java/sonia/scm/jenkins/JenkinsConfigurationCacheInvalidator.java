@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.github.legman.Subscribe;
+import jakarta.inject.Inject;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.plugin.Extension;
+import sonia.scm.repository.RepositoryEvent;
+
+/**
+ * Evicts the cached jenkins configuration of deleted repositories from the
+ * {@link JenkinsContext}.
+ */
+@Extension
+@EagerSingleton
+public class JenkinsConfigurationCacheInvalidator {
+
+  private final JenkinsContext context;
+
+  @Inject
+  public JenkinsConfigurationCacheInvalidator(JenkinsContext context) {
+    this.context = context;
+  }
+
+  @Subscribe(async = false)
+  public void handle(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      context.invalidate(event.getItem().getId());
+    }
+  }
+}
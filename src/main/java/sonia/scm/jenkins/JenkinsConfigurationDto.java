@@ -23,6 +23,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.List;
 import java.util.Set;
 
 @Getter
@@ -38,6 +39,8 @@ public class JenkinsConfigurationDto extends HalRepresentation {
   private String username;
   private boolean csrf;
   private Set<BuildParameterDto> buildParameters;
+  private List<JenkinsTargetDto> additionalTargets;
+  private List<JenkinsJobDto> jobs;
 
   @Override
   @SuppressWarnings("squid:S1185") // We want to have this method available in this package
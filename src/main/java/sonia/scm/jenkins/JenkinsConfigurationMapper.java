@@ -29,6 +29,9 @@ import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryPermissions;
 
 import jakarta.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 
 import static de.otto.edison.hal.Link.link;
 import static de.otto.edison.hal.Links.linkingTo;
@@ -56,6 +59,23 @@ public abstract class JenkinsConfigurationMapper {
     if (StringUtils.isNotEmpty(target.getToken())) {
       target.setToken(DUMMY_SECRET);
     }
+    if (target.getAdditionalTargets() != null) {
+      for (JenkinsTargetDto additionalTarget : target.getAdditionalTargets()) {
+        if (StringUtils.isNotEmpty(additionalTarget.getApiToken())) {
+          additionalTarget.setApiToken(DUMMY_SECRET);
+        }
+        if (StringUtils.isNotEmpty(additionalTarget.getToken())) {
+          additionalTarget.setToken(DUMMY_SECRET);
+        }
+      }
+    }
+    if (target.getJobs() != null) {
+      for (JenkinsJobDto job : target.getJobs()) {
+        if (StringUtils.isNotEmpty(job.getToken())) {
+          job.setToken(DUMMY_SECRET);
+        }
+      }
+    }
   }
 
   @AfterMapping
@@ -66,6 +86,43 @@ public abstract class JenkinsConfigurationMapper {
     if (DUMMY_SECRET.equals(target.getToken())) {
       target.setToken(oldConfiguration.getToken());
     }
+    for (JenkinsTarget additionalTarget : target.getAdditionalTargets()) {
+      Optional<JenkinsTarget> oldTarget = findOldTarget(oldConfiguration, additionalTarget);
+      if (DUMMY_SECRET.equals(additionalTarget.getApiToken())) {
+        additionalTarget.setApiToken(oldTarget.map(JenkinsTarget::getApiToken).orElse(null));
+      }
+      if (DUMMY_SECRET.equals(additionalTarget.getToken())) {
+        additionalTarget.setToken(oldTarget.map(JenkinsTarget::getToken).orElse(null));
+      }
+    }
+    Map<String, Integer> occurrences = new HashMap<>();
+    for (JenkinsJob job : target.getJobs()) {
+      int occurrence = occurrences.merge(StringUtils.defaultString(job.getProject()), 1, Integer::sum) - 1;
+      if (DUMMY_SECRET.equals(job.getToken())) {
+        job.setToken(findOldJobToken(oldConfiguration, job.getProject(), occurrence));
+      }
+    }
+  }
+
+  /**
+   * Jobs are matched by project and, if there are several jobs for the same
+   * project, by their order among those jobs.
+   */
+  private String findOldJobToken(JenkinsConfiguration oldConfiguration, String project, int occurrence) {
+    return oldConfiguration.getJobs()
+      .stream()
+      .filter(old -> StringUtils.equals(old.getProject(), project))
+      .skip(occurrence)
+      .map(JenkinsJob::getToken)
+      .findFirst()
+      .orElse(null);
+  }
+
+  private Optional<JenkinsTarget> findOldTarget(JenkinsConfiguration oldConfiguration, JenkinsTarget target) {
+    return oldConfiguration.getAdditionalTargets()
+      .stream()
+      .filter(old -> StringUtils.equals(old.getUrl(), target.getUrl()) && StringUtils.equals(old.getProject(), target.getProject()))
+      .findFirst();
   }
 
   @AfterMapping
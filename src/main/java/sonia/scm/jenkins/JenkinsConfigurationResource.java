@@ -21,6 +21,7 @@ package sonia.scm.jenkins;
 import com.google.inject.Inject;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -32,6 +33,7 @@ import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryManager;
 import sonia.scm.repository.RepositoryPermissions;
 import sonia.scm.web.VndMediaType;
+import jakarta.validation.Valid;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
@@ -65,11 +67,17 @@ public class JenkinsConfigurationResource {
     JenkinsContext context,
     GlobalJenkinsConfigurationMapperImpl globalJenkinsConfigurationMapper,
     JenkinsConfigurationMapperImpl jenkinsConfigurationMapper,
-    RepositoryManager repositoryManager) {
+    RepositoryManager repositoryManager,
+    BuildParameterTemplates templates,
+    JenkinsCircuitBreaker circuitBreaker,
+    DeliveryHistory history) {
     this.context = context;
     this.globalJenkinsConfigurationMapper = globalJenkinsConfigurationMapper;
     this.jenkinsConfigurationMapper = jenkinsConfigurationMapper;
     this.repositoryManager = repositoryManager;
+    this.templates = templates;
+    this.circuitBreaker = circuitBreaker;
+    this.history = history;
   }
 
   @GET
@@ -116,13 +124,69 @@ public class JenkinsConfigurationResource {
       schema = @Schema(implementation = ErrorDto.class)
     )
   )
-  public Response updateGlobalJenkinsConfig(GlobalJenkinsConfigurationDto updatedConfig) {
+  public Response updateGlobalJenkinsConfig(@Valid GlobalJenkinsConfigurationDto updatedConfig) {
     ConfigurationPermissions.write(NAME).check();
     context.storeConfiguration(globalJenkinsConfigurationMapper.map(updatedConfig, context.getConfiguration()));
 
     return Response.noContent().build();
   }
 
+  @GET
+  @Path("/circuit-breakers")
+  @Produces({MediaType.APPLICATION_JSON})
+  @Operation(summary = "Get circuit breaker states", description = "Returns the circuit breaker state of every jenkins server which has been called since the start.", tags = "Jenkins Plugin")
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = MediaType.APPLICATION_JSON,
+      array = @ArraySchema(schema = @Schema(implementation = JenkinsCircuitBreaker.CircuitState.class))
+    )
+  )
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the configuration")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response getCircuitBreakerStates() {
+    ConfigurationPermissions.read(NAME).check();
+
+    return Response.ok(circuitBreaker.getStates()).build();
+  }
+
+  @GET
+  @Path("/deliveries")
+  @Produces({MediaType.APPLICATION_JSON})
+  @Operation(summary = "Get recent deliveries", description = "Returns the recent requests to jenkins of all repositories, newest first.", tags = "Jenkins Plugin")
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = MediaType.APPLICATION_JSON,
+      array = @ArraySchema(schema = @Schema(implementation = DeliveryHistory.Delivery.class))
+    )
+  )
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the configuration")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response getDeliveries() {
+    ConfigurationPermissions.read(NAME).check();
+
+    return Response.ok(history.getDeliveries()).build();
+  }
+
   @GET
   @Path("/{namespace}/{name}")
   @Produces({MediaType.APPLICATION_JSON})
@@ -184,11 +248,49 @@ public class JenkinsConfigurationResource {
   )
   public Response updateJenkinsConfigForRepository(@PathParam("namespace") String namespace, @PathParam("name") String name, JenkinsConfigurationDto updatedConfig) {
     Repository repository = loadRepository(namespace, name);
-    context.storeConfiguration(jenkinsConfigurationMapper.map(updatedConfig, context.getConfiguration(repository)), repository);
+    JenkinsConfiguration configuration = jenkinsConfigurationMapper.map(updatedConfig, context.getConfiguration(repository));
+    context.storeConfiguration(configuration, repository);
+    templates.warm(configuration);
 
     return Response.noContent().build();
   }
 
+  @GET
+  @Path("/{namespace}/{name}/deliveries")
+  @Produces({MediaType.APPLICATION_JSON})
+  @Operation(summary = "Get recent deliveries of repository", description = "Returns the recent requests to jenkins caused by the repository, newest first.", tags = "Jenkins Plugin")
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = MediaType.APPLICATION_JSON,
+      array = @ArraySchema(schema = @Schema(implementation = DeliveryHistory.Delivery.class))
+    )
+  )
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the configuration")
+  @ApiResponse(
+    responseCode = "404",
+    description = "not found, no repository with the specified namespace and name available",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    ))
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response getDeliveriesForRepository(@PathParam("namespace") String namespace, @PathParam("name") String name) {
+    Repository repository = loadRepository(namespace, name);
+    RepositoryPermissions.custom(NAME, repository).check();
+
+    return Response.ok(history.getDeliveries(repository.getId())).build();
+  }
+
   private Repository loadRepository(String namespace, String name) {
     Repository repository = repositoryManager.get(new NamespaceAndName(namespace, name));
     if (repository == null) {
@@ -201,4 +303,7 @@ public class JenkinsConfigurationResource {
   private final GlobalJenkinsConfigurationMapper globalJenkinsConfigurationMapper;
   private final JenkinsConfigurationMapper jenkinsConfigurationMapper;
   private final RepositoryManager repositoryManager;
+  private final BuildParameterTemplates templates;
+  private final JenkinsCircuitBreaker circuitBreaker;
+  private final DeliveryHistory history;
 }
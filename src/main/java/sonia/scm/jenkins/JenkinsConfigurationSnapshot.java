@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.base.Strings;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Global and repository configuration, resolved once and shared by all
+ * components which handle the same event. The configuration objects are
+ * replaced on every store and are never modified in place, so every handler
+ * and relay of one event observes the same version of the configuration, even
+ * if the configuration is changed while the event is processed.
+ */
+final class JenkinsConfigurationSnapshot {
+
+  private final GlobalJenkinsConfiguration globalConfiguration;
+  private final JenkinsConfiguration repositoryConfiguration;
+
+  JenkinsConfigurationSnapshot(GlobalJenkinsConfiguration globalConfiguration, JenkinsConfiguration repositoryConfiguration) {
+    this.globalConfiguration = globalConfiguration;
+    this.repositoryConfiguration = repositoryConfiguration;
+  }
+
+  GlobalJenkinsConfiguration getGlobalConfiguration() {
+    return globalConfiguration;
+  }
+
+  /**
+   * Returns the repository configuration or an empty optional, if the snapshot
+   * was not resolved for a repository or the repository configuration is
+   * disabled globally.
+   */
+  Optional<JenkinsConfiguration> getRepositoryConfiguration() {
+    return Optional.ofNullable(repositoryConfiguration);
+  }
+
+  boolean isEventTriggerDisabled() {
+    return globalConfiguration.isDisableEventTrigger();
+  }
+
+  /**
+   * Returns the url of the repository configuration, if one is configured,
+   * otherwise the url of a valid global configuration.
+   */
+  Optional<String> getServerUrl() {
+    if (repositoryConfiguration != null && !Strings.isNullOrEmpty(repositoryConfiguration.getUrl())) {
+      return Optional.of(repositoryConfiguration.getUrl());
+    }
+    return getGlobalServerUrl();
+  }
+
+  Optional<String> getGlobalServerUrl() {
+    if (globalConfiguration.isValid()) {
+      return Optional.of(globalConfiguration.getUrl());
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns the distinct urls of all targets of the repository configuration,
+   * if one is configured, otherwise the urls of all global servers.
+   */
+  List<String> getServerUrls() {
+    if (repositoryConfiguration != null && !Strings.isNullOrEmpty(repositoryConfiguration.getUrl())) {
+      return repositoryConfiguration.getTargets()
+        .stream()
+        .map(JenkinsTarget::getUrl)
+        .distinct()
+        .collect(Collectors.toList());
+    }
+    return getGlobalServerUrls();
+  }
+
+  /**
+   * Returns the distinct urls of all servers of a valid global configuration.
+   */
+  List<String> getGlobalServerUrls() {
+    if (globalConfiguration.isValid()) {
+      return globalConfiguration.getServers()
+        .stream()
+        .map(JenkinsServer::getUrl)
+        .distinct()
+        .collect(Collectors.toList());
+    }
+    return Collections.emptyList();
+  }
+}
@@ -18,16 +18,29 @@ package sonia.scm.jenkins;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import sonia.scm.repository.PostReceiveRepositoryHookEvent;
 import sonia.scm.repository.Repository;
 import sonia.scm.store.ConfigurationStore;
 import sonia.scm.store.ConfigurationStoreFactory;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Reads and stores the jenkins configurations. The global and the repository
+ * configurations are kept in memory after they have been read once. The
+ * cache is updated by the store methods and the repository configurations
+ * are evicted, if the repository is deleted (see
+ * {@link JenkinsConfigurationCacheInvalidator}). Components which handle the
+ * same event should use a {@link JenkinsConfigurationSnapshot} to get a
+ * consistent view on the configuration. Cache hits and misses are counted
+ * with the {@link JenkinsMetrics}.
  *
  * @author Sebastian Sdorra
  */
@@ -37,24 +50,60 @@ public class JenkinsContext {
   public static final String NAME = "jenkins";
 
   @Inject
-  public JenkinsContext(ConfigurationStoreFactory storeFactory) {
+  public JenkinsContext(ConfigurationStoreFactory storeFactory, JenkinsMetrics metrics) {
     this.storeFactory = storeFactory;
+    this.metrics = metrics;
   }
 
   public void storeConfiguration(GlobalJenkinsConfiguration configuration) {
-    createGlobalStore().set(configuration);
+    synchronized (globalLock) {
+      createGlobalStore().set(configuration);
+      globalConfiguration = configuration;
+    }
   }
 
   public void storeConfiguration(JenkinsConfiguration configuration, Repository repository) {
-    createStore(repository).set(configuration);
+    repositoryConfigurations.compute(repository.getId(), (id, cached) -> {
+      createStore(repository).set(configuration);
+      return configuration;
+    });
   }
 
   public GlobalJenkinsConfiguration getConfiguration() {
-    return createGlobalStore().getOptional().orElse(new GlobalJenkinsConfiguration());
+    GlobalJenkinsConfiguration configuration = globalConfiguration;
+    if (configuration != null) {
+      metrics.configCache(JenkinsMetrics.SCOPE_GLOBAL, true);
+      return configuration;
+    }
+    synchronized (globalLock) {
+      boolean hit = globalConfiguration != null;
+      if (!hit) {
+        globalConfiguration = createGlobalStore().getOptional().orElse(new GlobalJenkinsConfiguration());
+      }
+      metrics.configCache(JenkinsMetrics.SCOPE_GLOBAL, hit);
+      return globalConfiguration;
+    }
   }
 
   public JenkinsConfiguration getConfiguration(Repository repository) {
-    return createStore(repository).getOptional().orElse(new JenkinsConfiguration());
+    JenkinsConfiguration configuration = repositoryConfigurations.get(repository.getId());
+    if (configuration != null) {
+      metrics.configCache(JenkinsMetrics.SCOPE_REPOSITORY, true);
+      return configuration;
+    }
+    return repositoryConfigurations.computeIfAbsent(repository.getId(), id -> {
+      metrics.configCache(JenkinsMetrics.SCOPE_REPOSITORY, false);
+      return createStore(repository).getOptional().orElse(new JenkinsConfiguration());
+    });
+  }
+
+  /**
+   * Removes the cached configuration of the repository with the given id.
+   *
+   * @param repositoryId id of the repository
+   */
+  void invalidate(String repositoryId) {
+    repositoryConfigurations.remove(repositoryId);
   }
 
   private ConfigurationStore<JenkinsConfiguration> createStore(Repository repository) {
@@ -66,27 +115,53 @@ public class JenkinsContext {
   }
 
   public Optional<String> getServerUrl(Repository repository) {
-    GlobalJenkinsConfiguration globalConfig = getConfiguration();
-    if (!globalConfig.isDisableRepositoryConfiguration()) {
-      JenkinsConfiguration repoConfig = getConfiguration(repository);
-      if (!Strings.isNullOrEmpty(repoConfig.getUrl())) {
-        return Optional.of(repoConfig.getUrl());
-      }
-    }
-
-    if (globalConfig.isValid()) {
-      return Optional.of(globalConfig.getUrl());
-    }
-    return Optional.empty();
+    return snapshot(repository).getServerUrl();
   }
 
   public Optional<String> getServerUrl() {
-    GlobalJenkinsConfiguration globalConfig = getConfiguration();
-    if (globalConfig.isValid()) {
-      return Optional.of(globalConfig.getUrl());
+    return snapshot().getGlobalServerUrl();
+  }
+
+  /**
+   * Returns a snapshot of the global configuration.
+   */
+  JenkinsConfigurationSnapshot snapshot() {
+    return new JenkinsConfigurationSnapshot(getConfiguration(), null);
+  }
+
+  /**
+   * Returns a snapshot of the global configuration and the configuration of
+   * the given repository, if repository configurations are not disabled.
+   *
+   * @param repository repository
+   */
+  JenkinsConfigurationSnapshot snapshot(Repository repository) {
+    GlobalJenkinsConfiguration globalConfiguration = getConfiguration();
+    if (globalConfiguration.isDisableRepositoryConfiguration()) {
+      return new JenkinsConfigurationSnapshot(globalConfiguration, null);
     }
-    return Optional.empty();
+    return new JenkinsConfigurationSnapshot(globalConfiguration, getConfiguration(repository));
+  }
+
+  /**
+   * Returns the snapshot for the repository of the given event. The snapshot is
+   * resolved by the first caller and shared with all other subscribers of the
+   * same event, as long as the event is referenced.
+   *
+   * @param event post receive event
+   */
+  JenkinsConfigurationSnapshot snapshot(PostReceiveRepositoryHookEvent event) {
+    return eventSnapshots.getUnchecked(event);
   }
 
   private ConfigurationStoreFactory storeFactory;
+  private final JenkinsMetrics metrics;
+
+  private final Object globalLock = new Object();
+  private volatile GlobalJenkinsConfiguration globalConfiguration;
+  private final Map<String, JenkinsConfiguration> repositoryConfigurations = new ConcurrentHashMap<>();
+
+  private final LoadingCache<PostReceiveRepositoryHookEvent, JenkinsConfigurationSnapshot> eventSnapshots = CacheBuilder.newBuilder()
+    .weakKeys()
+    .build(CacheLoader.from(event -> snapshot(event.getRepository())));
 }
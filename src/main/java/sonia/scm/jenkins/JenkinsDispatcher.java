@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.plugin.Extension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends {@link JenkinsRequest}s in the background, so that a slow or
+ * unreachable jenkins server does not block the push of a repository.
+ * The requests are queued in a bounded queue and are executed by a pool of
+ * worker threads. Queue size, worker count and the {@link DispatchDropPolicy}
+ * are read from the {@link GlobalJenkinsConfiguration}. With
+ * {@link DispatchExecutionMode#VIRTUAL_THREADS} every request gets its own
+ * virtual thread and the queue size limits the requests in flight.
+ * <p>
+ * Every request is written to the {@link JenkinsOutbox} before it is queued
+ * and acknowledged once jenkins has answered or the request was dropped by the
+ * {@link DispatchDropPolicy}. Requests which could not be delivered, because
+ * jenkins was not reachable or the server was stopped, are replayed on the
+ * next start. If the outbox could not be written, the request is sent
+ * without durability.
+ * <p>
+ * Temporary failures are retried with an exponential backoff, see
+ * {@link RetryPolicy}, until the configured number of attempts is reached.
+ * Requests to a server whose {@link JenkinsCircuitBreaker circuit} is open do
+ * not count as attempt, they are postponed until the circuit lets requests
+ * through again or until they are older than {@link JenkinsOutbox#MAX_AGE}.
+ * <p>
+ * If a coalesce window is configured, repeated build triggers of the same job
+ * are merged by the {@link RequestCoalescer}.
+ * <p>
+ * With {@link DispatchDropPolicy#CALLER_RUNS} only requests of hooks are sent
+ * by the calling thread if the queue is full. Retries and coalesced requests
+ * are handed over by the scheduler thread, they are postponed instead, so that
+ * a slow server can not hold up the scheduler.
+ * <p>
+ * The time requests wait in the queue and requests which were given up are
+ * recorded with the {@link JenkinsMetrics}, every attempt is recorded in the
+ * {@link DeliveryHistory}.
+ */
+@Extension
+@Singleton
+public class JenkinsDispatcher implements ServletContextListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JenkinsDispatcher.class);
+
+  static final int DEFAULT_QUEUE_SIZE = 1000;
+  static final int DEFAULT_WORKER_COUNT = 4;
+  static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+  private static final long NOT_STORED = -1L;
+  private static final Duration QUEUE_FULL_DELAY = Duration.ofSeconds(1);
+
+  private final JenkinsContext context;
+  private final JenkinsRequestSender sender;
+  private final JenkinsOutbox outbox;
+  private final RetryPolicy retryPolicy;
+  private final JenkinsMetrics metrics;
+  private final DeliveryHistory history;
+  private final ScheduledExecutorService scheduler;
+  private final RequestCoalescer coalescer;
+
+  private Settings settings;
+  private ExecutorService executor;
+
+  @Inject
+  public JenkinsDispatcher(JenkinsContext context, JenkinsRequestSender sender, JenkinsOutbox outbox, JenkinsMetrics metrics, DeliveryHistory history) {
+    this(context, sender, outbox, metrics, history, new RetryPolicy());
+  }
+
+  @VisibleForTesting
+  JenkinsDispatcher(JenkinsContext context, JenkinsRequestSender sender, JenkinsOutbox outbox, JenkinsMetrics metrics, DeliveryHistory history, RetryPolicy retryPolicy) {
+    this.context = context;
+    this.sender = sender;
+    this.outbox = outbox;
+    this.metrics = metrics;
+    this.history = history;
+    this.retryPolicy = retryPolicy;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("JenkinsDispatcherScheduler-%d").setDaemon(true).build()
+    );
+    this.coalescer = new RequestCoalescer(scheduler, new RequestCoalescer.Target() {
+      @Override
+      public void deliver(long id, JenkinsRequest request) {
+        execute(new Delivery(id, request));
+      }
+
+      @Override
+      public void deliverPending(long id, JenkinsRequest request) {
+        execute(new Delivery(id, request, 1, System.nanoTime()));
+      }
+
+      @Override
+      public void superseded(long id) {
+        acknowledge(id);
+      }
+    });
+  }
+
+  /**
+   * Enqueues the request for background delivery.
+   *
+   * @param request request to send
+   */
+  void dispatch(JenkinsRequest request) {
+    long id;
+    try {
+      id = outbox.append(request);
+    } catch (UncheckedIOException ex) {
+      LOG.error("failed to store {} request to {} in the outbox, sending it without durability", request.getType(), request.getServerUrl(), ex);
+      id = NOT_STORED;
+    }
+    submit(id, request);
+  }
+
+  private void acknowledge(long id) {
+    if (id == NOT_STORED) {
+      return;
+    }
+    try {
+      outbox.acknowledge(id);
+    } catch (UncheckedIOException ex) {
+      LOG.warn("failed to acknowledge jenkins request {} in the outbox", id, ex);
+    }
+  }
+
+  private void dropped(Runnable runnable) {
+    if (runnable instanceof Delivery) {
+      ((Delivery) runnable).dropped();
+    }
+  }
+
+  private void submit(long id, JenkinsRequest request) {
+    int coalesceWindow = context.getConfiguration().getDispatchCoalesceWindow();
+    if (request.isCoalescable() && coalesceWindow > 0) {
+      coalescer.submit(id, request, Duration.ofSeconds(coalesceWindow));
+    } else {
+      execute(new Delivery(id, request));
+    }
+  }
+
+  private void execute(Delivery delivery) {
+    try {
+      executor().execute(delivery);
+    } catch (RejectedExecutionException ex) {
+      LOG.debug("dispatcher is stopped, {} stays in the outbox", delivery);
+    }
+  }
+
+  private void runOnCaller(Runnable runnable, ExecutorService pool) {
+    if (pool.isShutdown()) {
+      LOG.debug("dispatcher is stopped, {} stays in the outbox", runnable);
+    } else if (runnable instanceof Delivery && ((Delivery) runnable).scheduled) {
+      // the scheduler thread must never send requests itself, otherwise a
+      // slow server would delay every other retry and coalesced request
+      LOG.debug("jenkins dispatch queue is full, postponing {}", runnable);
+      ((Delivery) runnable).requeue();
+    } else {
+      LOG.debug("jenkins dispatch queue is full, sending {} synchronously", runnable);
+      runnable.run();
+    }
+  }
+
+  private synchronized ExecutorService executor() {
+    Settings current = Settings.of(context.getConfiguration());
+    if (executor == null || !current.equals(settings)) {
+      ExecutorService previous = executor;
+      executor = createExecutor(current);
+      settings = current;
+      if (previous != null) {
+        LOG.debug("dispatch settings changed, replacing executor");
+        previous.shutdown();
+      }
+    }
+    return executor;
+  }
+
+  private ExecutorService createExecutor(Settings settings) {
+    if (settings.getExecutionMode() == DispatchExecutionMode.VIRTUAL_THREADS) {
+      if (VirtualThreadExecutor.isSupported()) {
+        try {
+          return VirtualThreadExecutor.create(settings.getQueueSize(), settings.getDropPolicy(), this::dropped, this::runOnCaller);
+        } catch (IllegalStateException ex) {
+          LOG.warn("failed to create virtual threads, falling back to a pool of platform threads", ex);
+          return createThreadPool(settings);
+        }
+      }
+      LOG.warn("virtual threads are not supported by this java runtime, falling back to a pool of platform threads");
+    }
+    return createThreadPool(settings);
+  }
+
+  private ExecutorService createThreadPool(Settings settings) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+      settings.getWorkerCount(),
+      settings.getWorkerCount(),
+      60L,
+      TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(settings.getQueueSize()),
+      new ThreadFactoryBuilder().setNameFormat("JenkinsDispatcher-%d").setDaemon(true).build(),
+      createRejectionHandler(settings.getDropPolicy())
+    );
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private RejectedExecutionHandler createRejectionHandler(DispatchDropPolicy dropPolicy) {
+    switch (dropPolicy) {
+      case DISCARD_NEWEST:
+        return (runnable, pool) -> {
+          LOG.warn("jenkins dispatch queue is full, dropping {}", runnable);
+          dropped(runnable);
+        };
+      case DISCARD_OLDEST:
+        return (runnable, pool) -> {
+          if (!pool.isShutdown()) {
+            Runnable oldest = pool.getQueue().poll();
+            LOG.warn("jenkins dispatch queue is full, dropping {}", oldest);
+            dropped(oldest);
+            pool.execute(runnable);
+          }
+        };
+      default:
+        return this::runOnCaller;
+    }
+  }
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    List<JenkinsOutbox.Entry> pending;
+    try {
+      pending = outbox.pending();
+    } catch (UncheckedIOException ex) {
+      LOG.error("failed to read undelivered jenkins requests from the outbox", ex);
+      return;
+    }
+    if (!pending.isEmpty()) {
+      LOG.info("replaying {} undelivered jenkins requests", pending.size());
+      for (JenkinsOutbox.Entry entry : pending) {
+        submit(entry.getId(), entry.getRequest());
+      }
+    }
+  }
+
+  @Override
+  public synchronized void contextDestroyed(ServletContextEvent sce) {
+    // scheduled retries and coalesced requests stay in the outbox and are
+    // replayed on the next start
+    scheduler.shutdownNow();
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+          LOG.warn("could not deliver all queued jenkins requests before shutdown");
+          executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    outbox.close();
+  }
+
+  private class Delivery implements Runnable {
+
+    private final long id;
+    private final JenkinsRequest request;
+    private final int attempt;
+    private final long created;
+    private final boolean scheduled;
+    private final Timer.Sample queued;
+
+    private Delivery(long id, JenkinsRequest request) {
+      this(id, request, 1, System.nanoTime(), false);
+    }
+
+    /**
+     * Creates a delivery which is handed to the executor by the scheduler.
+     */
+    private Delivery(long id, JenkinsRequest request, int attempt, long created) {
+      this(id, request, attempt, created, true);
+    }
+
+    private Delivery(long id, JenkinsRequest request, int attempt, long created, boolean scheduled) {
+      this.id = id;
+      this.request = request;
+      this.attempt = attempt;
+      this.created = created;
+      this.scheduled = scheduled;
+      this.queued = metrics.start();
+    }
+
+    @Override
+    public void run() {
+      metrics.queueWait(queued, request);
+      long start = System.nanoTime();
+      try {
+        int status = sender.send(request);
+        record(start, status, null);
+        if (RetryPolicy.isRetryable(status)) {
+          retry("status " + status);
+        } else {
+          retryPolicy.success(request.getServerUrl());
+          acknowledge(id);
+        }
+      } catch (CircuitOpenException ex) {
+        postpone(ex.getRetryAfter());
+      } catch (IOException ex) {
+        record(start, null, ex);
+        if (RetryPolicy.isRetryable(ex)) {
+          LOG.debug("failed to send {}", this, ex);
+          retry(ex.getMessage());
+        } else {
+          LOG.error("could not send {} request to jenkins at {}", request.getType(), request.getServerUrl(), ex);
+          metrics.deliveryFailure(request);
+          acknowledge(id);
+        }
+      } catch (RuntimeException ex) {
+        LOG.error("could not send {} request to jenkins at {}", request.getType(), request.getServerUrl(), ex);
+        record(start, null, ex);
+        metrics.deliveryFailure(request);
+        acknowledge(id);
+      }
+    }
+
+    private void dropped() {
+      metrics.deliveryFailure(request);
+      acknowledge(id);
+    }
+
+    private void record(long start, Integer status, Exception failure) {
+      history.record(request, status, failure, Duration.ofNanos(System.nanoTime() - start), attempt - 1);
+    }
+
+    private void retry(String reason) {
+      int maxAttempts = Settings.of(context.getConfiguration()).getMaxAttempts();
+      if (attempt >= maxAttempts) {
+        LOG.error("giving up {} after {} attempts, last failure: {}", this, attempt, reason);
+        metrics.deliveryFailure(request);
+        acknowledge(id);
+        return;
+      }
+      Duration delay = retryPolicy.failure(request.getServerUrl());
+      LOG.warn("attempt {} of {} failed ({}), retrying in {} ms", attempt, this, reason, delay.toMillis());
+      schedule(attempt + 1, delay);
+    }
+
+    private void postpone(Duration delay) {
+      if (System.nanoTime() - created > JenkinsOutbox.MAX_AGE.toNanos()) {
+        LOG.error("giving up {}, because the circuit of the server was open for too long", this);
+        metrics.deliveryFailure(request);
+        acknowledge(id);
+        return;
+      }
+      LOG.debug("circuit of {} is open, postponing attempt {} by {} ms", this, attempt, delay.toMillis());
+      schedule(attempt, delay);
+    }
+
+    private void requeue() {
+      schedule(attempt, QUEUE_FULL_DELAY);
+    }
+
+    private void schedule(int nextAttempt, Duration delay) {
+      try {
+        scheduler.schedule(
+          () -> execute(new Delivery(id, request, nextAttempt, created)),
+          delay.toMillis(),
+          TimeUnit.MILLISECONDS
+        );
+      } catch (RejectedExecutionException ex) {
+        LOG.debug("dispatcher is stopped, {} stays in the outbox", this);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "jenkins " + request.getType() + " request to " + request.getServerUrl();
+    }
+  }
+
+  @Value
+  private static class Settings {
+    int queueSize;
+    int workerCount;
+    DispatchDropPolicy dropPolicy;
+    DispatchExecutionMode executionMode;
+    int maxAttempts;
+
+    static Settings of(GlobalJenkinsConfiguration configuration) {
+      return new Settings(
+        positiveOrDefault(configuration.getDispatchQueueSize(), DEFAULT_QUEUE_SIZE),
+        positiveOrDefault(configuration.getDispatchWorkerCount(), DEFAULT_WORKER_COUNT),
+        configuration.getDispatchDropPolicy() != null ? configuration.getDispatchDropPolicy() : DispatchDropPolicy.CALLER_RUNS,
+        configuration.getDispatchExecutionMode() != null ? configuration.getDispatchExecutionMode() : DispatchExecutionMode.PLATFORM_THREADS,
+        positiveOrDefault(configuration.getDispatchMaxAttempts(), DEFAULT_MAX_ATTEMPTS)
+      );
+    }
+
+    private static int positiveOrDefault(int value, int defaultValue) {
+      return value > 0 ? value : defaultValue;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.plugin.Extension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates serialized events per jenkins server and sends them as a json
+ * array in a single request to {@value #BATCH_ENDPOINT}. A batch is sent when
+ * it reaches the configured size or when its first event has waited for the
+ * configured maximum delay. Batches are only sent to servers which announce
+ * the support via {@link JenkinsEventCapabilities}, for all other servers the
+ * events of the batch are sent one by one.
+ * <p>
+ * Events are written to the {@link JenkinsOutbox} when the batch is handed to
+ * the {@link JenkinsDispatcher}. Events which are still collected when the
+ * context is destroyed are handed to the dispatcher immediately.
+ */
+@Extension
+@Singleton
+public class JenkinsEventBatcher implements ServletContextListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JenkinsEventBatcher.class);
+
+  static final String BATCH_ENDPOINT = "scm-manager-hook/notify-batch";
+  static final int DEFAULT_BATCH_SIZE = 100;
+  static final int DEFAULT_MAX_DELAY = 1000;
+
+  private final JenkinsContext context;
+  private final JenkinsDispatcher dispatcher;
+  private final JenkinsEventCapabilities capabilities;
+  private final ScheduledExecutorService scheduler;
+
+  // guarded by this
+  private final Map<String, List<String>> batches = new HashMap<>();
+
+  @Inject
+  JenkinsEventBatcher(JenkinsContext context, JenkinsDispatcher dispatcher, JenkinsEventCapabilities capabilities) {
+    this(context, dispatcher, capabilities, Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("JenkinsEventBatcher-%d").setDaemon(true).build()
+    ));
+  }
+
+  @VisibleForTesting
+  JenkinsEventBatcher(JenkinsContext context, JenkinsDispatcher dispatcher, JenkinsEventCapabilities capabilities, ScheduledExecutorService scheduler) {
+    this.context = context;
+    this.dispatcher = dispatcher;
+    this.capabilities = capabilities;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Adds the serialized event to the batch of the server.
+   *
+   * @param serverUrl base url of the jenkins server
+   * @param json      serialized {@link JenkinsEventDto}
+   */
+  void add(String serverUrl, String json) {
+    GlobalJenkinsConfiguration configuration = context.getConfiguration();
+    int batchSize = positiveOrDefault(configuration.getEventBatchSize(), DEFAULT_BATCH_SIZE);
+    int maxDelay = positiveOrDefault(configuration.getEventBatchMaxDelay(), DEFAULT_MAX_DELAY);
+
+    List<String> full = null;
+    synchronized (this) {
+      List<String> batch = batches.computeIfAbsent(serverUrl, key -> new ArrayList<>());
+      if (batch.isEmpty()) {
+        schedule(() -> flush(serverUrl, batch), maxDelay);
+      }
+      batch.add(json);
+      if (batch.size() >= batchSize) {
+        batches.remove(serverUrl);
+        full = batch;
+      }
+    }
+    if (full != null) {
+      List<String> events = full;
+      // the capability probe may block, so the batch is never sent by the caller
+      schedule(() -> send(serverUrl, events), 0);
+    }
+  }
+
+  private void flush(String serverUrl, List<String> batch) {
+    synchronized (this) {
+      if (batches.get(serverUrl) != batch) {
+        // the batch was already sent, because it reached the size limit
+        return;
+      }
+      batches.remove(serverUrl);
+    }
+    send(serverUrl, batch);
+  }
+
+  private void send(String serverUrl, List<String> events) {
+    boolean jsonContent = context.getConfiguration().isEventJsonContent();
+    if (events.size() > 1 && capabilities.isBatchSupported(serverUrl)) {
+      LOG.debug("sending batch of {} events to {}", events.size(), serverUrl);
+      dispatcher.dispatch(JenkinsEventRelay.createRequest(
+        serverUrl, Urls.withTrailingSlash(serverUrl).concat(BATCH_ENDPOINT), toJsonArray(events), jsonContent
+      ));
+    } else {
+      for (String event : events) {
+        dispatcher.dispatch(JenkinsEventRelay.createRequest(
+          serverUrl, Urls.withTrailingSlash(serverUrl).concat(JenkinsEventRelay.EVENT_ENDPOINT), event, jsonContent
+        ));
+      }
+    }
+  }
+
+  private static String toJsonArray(List<String> events) {
+    int length = events.size() + 1;
+    for (String event : events) {
+      length += event.length();
+    }
+    StringBuilder array = new StringBuilder(length).append('[');
+    for (int i = 0; i < events.size(); i++) {
+      if (i > 0) {
+        array.append(',');
+      }
+      array.append(events.get(i));
+    }
+    return array.append(']').toString();
+  }
+
+  private void schedule(Runnable task, long delay) {
+    try {
+      scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      LOG.warn("could not schedule batch of jenkins events", ex);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    // flushes the collected batches and sends the full ones
+    for (Runnable task : scheduler.shutdownNow()) {
+      task.run();
+    }
+    Map<String, List<String>> remaining;
+    synchronized (this) {
+      remaining = new HashMap<>(batches);
+      batches.clear();
+    }
+    if (!remaining.isEmpty()) {
+      LOG.debug("sending {} collected batches of jenkins events before shutdown", remaining.size());
+      remaining.forEach(this::send);
+    }
+  }
+
+  private static int positiveOrDefault(int value, int defaultValue) {
+    return value > 0 ? value : defaultValue;
+  }
+}
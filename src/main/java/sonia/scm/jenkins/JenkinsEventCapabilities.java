@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import lombok.extern.slf4j.Slf4j;
+import sonia.scm.plugin.Extension;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.net.ahc.AdvancedHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes which features of the event endpoint are supported by the
+ * SCM-Manager plugin of a jenkins server. The plugin lists its capabilities at
+ * {@value #CAPABILITIES_ENDPOINT}, e.g. {@code {"capabilities": ["batch"]}}.
+ * Older versions do not provide the endpoint, so a missing endpoint means that
+ * the feature is not supported. The answer is cached for an hour per server.
+ * <p>
+ * The probe runs in the background, so that a slow jenkins server does not
+ * block the caller. Until the answer is known, the feature is treated as not
+ * supported. If the server could not be reached or has answered with a server
+ * error, the probe is repeated after {@link #FAILED_PROBE_TTL}.
+ */
+@Slf4j
+@Extension
+@Singleton
+public class JenkinsEventCapabilities implements ServletContextListener {
+
+  static final String CAPABILITIES_ENDPOINT = "scm-manager-hook/capabilities";
+  static final String BATCH = "batch";
+  static final long FAILED_PROBE_TTL = 60;
+
+  private final Provider<AdvancedHttpClient> httpClientProvider;
+  private final ExecutorService executor;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Cache<String, Boolean> batchSupport;
+  private final Cache<String, Boolean> failedProbes;
+  private final Set<String> probing = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  JenkinsEventCapabilities(Provider<AdvancedHttpClient> httpClientProvider) {
+    this(
+      httpClientProvider,
+      Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("JenkinsCapabilitiesProbe-%d").setDaemon(true).build()
+      ),
+      Ticker.systemTicker()
+    );
+  }
+
+  @VisibleForTesting
+  JenkinsEventCapabilities(Provider<AdvancedHttpClient> httpClientProvider, ExecutorService executor, Ticker ticker) {
+    this.httpClientProvider = httpClientProvider;
+    this.executor = executor;
+    this.batchSupport = CacheBuilder.newBuilder()
+      .expireAfterWrite(1, TimeUnit.HOURS)
+      .ticker(ticker)
+      .build();
+    this.failedProbes = CacheBuilder.newBuilder()
+      .expireAfterWrite(FAILED_PROBE_TTL, TimeUnit.SECONDS)
+      .ticker(ticker)
+      .build();
+  }
+
+  /**
+   * Returns {@code true} if the jenkins server accepts batches of events.
+   * Returns {@code false} as long as the probe of the server is not finished.
+   *
+   * @param serverUrl base url of the jenkins server
+   */
+  boolean isBatchSupported(String serverUrl) {
+    Boolean supported = batchSupport.getIfPresent(serverUrl);
+    if (supported == null) {
+      startProbe(serverUrl);
+      supported = batchSupport.getIfPresent(serverUrl);
+    }
+    return supported != null && supported;
+  }
+
+  private void startProbe(String serverUrl) {
+    if (failedProbes.getIfPresent(serverUrl) != null || !probing.add(serverUrl)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          probe(serverUrl, BATCH);
+        } finally {
+          probing.remove(serverUrl);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      probing.remove(serverUrl);
+      log.debug("could not start probe of {}", serverUrl, ex);
+    }
+  }
+
+  private void probe(String serverUrl, String capability) {
+    String url = Urls.withTrailingSlash(serverUrl).concat(CAPABILITIES_ENDPOINT);
+    try {
+      AdvancedHttpResponse response = httpClientProvider.get().get(url).spanKind("Jenkins").request();
+      if (response.getStatus() >= 500) {
+        log.warn("failed to probe capabilities of jenkins at {}, status code {}", serverUrl, response.getStatus());
+        failedProbes.put(serverUrl, Boolean.TRUE);
+      } else if (response.getStatus() != 200) {
+        log.debug("jenkins at {} does not provide capabilities, status code {}", serverUrl, response.getStatus());
+        batchSupport.put(serverUrl, false);
+      } else {
+        batchSupport.put(serverUrl, contains(serverUrl, response, capability));
+      }
+    } catch (IOException | RuntimeException ex) {
+      log.warn("failed to probe capabilities of jenkins at {}: {}", serverUrl, ex.getMessage());
+      failedProbes.put(serverUrl, Boolean.TRUE);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    // running probes are interrupted, their servers are probed again after the restart
+    executor.shutdownNow();
+  }
+
+  private boolean contains(String serverUrl, AdvancedHttpResponse response, String capability) throws IOException {
+    try (InputStream content = response.contentAsStream()) {
+      JsonNode capabilities = mapper.readTree(content).path("capabilities");
+      for (JsonNode node : capabilities) {
+        if (capability.equals(node.asText())) {
+          log.info("jenkins at {} supports {} events", serverUrl, capability);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
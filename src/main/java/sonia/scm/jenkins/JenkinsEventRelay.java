@@ -17,85 +17,123 @@
 package sonia.scm.jenkins;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.config.ScmConfiguration;
-import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.repository.PostReceiveRepositoryHookEvent;
 import sonia.scm.repository.Repository;
 
 import jakarta.inject.Inject;
 import java.io.IOException;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 class JenkinsEventRelay {
 
   private static final Logger LOG = LoggerFactory.getLogger(JenkinsEventRelay.class);
   public static final String EVENT_ENDPOINT = "scm-manager-hook/notify";
+  static final String TYPE_EVENT = "event";
+  static final String CONTENT_TYPE_JSON = "application/json";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  /**
+   * Writers are immutable and thread safe, so one writer with the prefetched
+   * serializer is shared for each type of event.
+   */
+  private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
 
   private final ScmConfiguration configuration;
 
   private final JenkinsContext jenkinsContext;
-  private final AdvancedHttpClient httpClient;
-  private final Set<AdditionalServerIdentification> serverIdentifications;
-
-  private final ObjectMapper mapper = new ObjectMapper();
+  private final JenkinsDispatcher dispatcher;
+  private final JenkinsEventBatcher batcher;
+  private final ServerIdentificationCache serverIdentifications;
 
   @Inject
-  public JenkinsEventRelay(ScmConfiguration configuration, JenkinsContext jenkinsContext, AdvancedHttpClient httpClient, Set<AdditionalServerIdentification> serverIdentifications) {
+  public JenkinsEventRelay(ScmConfiguration configuration, JenkinsContext jenkinsContext, JenkinsDispatcher dispatcher, JenkinsEventBatcher batcher, ServerIdentificationCache serverIdentifications) {
     this.configuration = configuration;
     this.jenkinsContext = jenkinsContext;
-    this.httpClient = httpClient;
+    this.dispatcher = dispatcher;
+    this.batcher = batcher;
     this.serverIdentifications = serverIdentifications;
   }
 
   void send(JenkinsEventDto eventDto) {
-    doIfEnabled(() -> jenkinsContext.getServerUrl().ifPresent(s -> send(s, eventDto)));
+    JenkinsConfigurationSnapshot snapshot = jenkinsContext.snapshot();
+    doIfEnabled(snapshot, () -> snapshot.getGlobalServerUrls().forEach(s -> send(snapshot, s, eventDto)));
   }
 
   void send(Repository repository, JenkinsRepositoryEventDto eventDto) {
-    doIfEnabled(() -> jenkinsContext.getServerUrl(repository).ifPresent(s -> send(s, eventDto, repository)));
+    send(jenkinsContext.snapshot(repository), repository, eventDto);
+  }
+
+  /**
+   * Sends the event dto for the repository of the hook event, using the
+   * configuration snapshot which is shared by all handlers of the event.
+   */
+  void send(PostReceiveRepositoryHookEvent event, JenkinsRepositoryEventDto eventDto) {
+    send(jenkinsContext.snapshot(event), event.getRepository(), eventDto);
+  }
+
+  private void send(JenkinsConfigurationSnapshot snapshot, Repository repository, JenkinsRepositoryEventDto eventDto) {
+    doIfEnabled(snapshot, () -> snapshot.getServerUrls().forEach(s -> send(snapshot, s, eventDto, repository)));
   }
 
-  private void doIfEnabled(Runnable callback) {
-    if (!jenkinsContext.getConfiguration().isDisableEventTrigger()) {
+  private void doIfEnabled(JenkinsConfigurationSnapshot snapshot, Runnable callback) {
+    if (!snapshot.isEventTriggerDisabled()) {
       callback.run();
     }
   }
 
-  private void send(String serverUrl, JenkinsRepositoryEventDto eventDto, Repository repository) {
+  private void send(JenkinsConfigurationSnapshot snapshot, String serverUrl, JenkinsRepositoryEventDto eventDto, Repository repository) {
     eventDto.setNamespace(repository.getNamespace());
     eventDto.setName(repository.getName());
     eventDto.setType(repository.getType());
 
-    send(serverUrl, eventDto);
+    send(snapshot, serverUrl, eventDto);
   }
 
-  private void send(String serverUrl, JenkinsEventDto eventDto) {
+  private void send(JenkinsConfigurationSnapshot snapshot, String serverUrl, JenkinsEventDto eventDto) {
     eventDto.setServer(configuration.getBaseUrl());
 
-    List<AdditionalServerIdentification.Identification> identifications = serverIdentifications.stream().map(AdditionalServerIdentification::get).collect(Collectors.toList());
-    eventDto.setIdentifications(identifications);
+    eventDto.setIdentifications(serverIdentifications.get());
 
     try {
-      String json = mapper.writer().writeValueAsString(eventDto);
+      String json = WRITERS.computeIfAbsent(eventDto.getClass(), MAPPER::writerFor).writeValueAsString(eventDto);
 
-      httpClient.post(createEventHookUrl(serverUrl))
-        .spanKind("Jenkins")
-        .formContent().field("json", json).build()
-        .request();
+      GlobalJenkinsConfiguration globalConfiguration = snapshot.getGlobalConfiguration();
+      if (globalConfiguration.isEventBatching()) {
+        batcher.add(serverUrl, json);
+      } else {
+        dispatcher.dispatch(createRequest(serverUrl, createEventHookUrl(serverUrl), json, globalConfiguration.isEventJsonContent()));
+      }
     } catch (IOException e) {
       if (LOG.isWarnEnabled()) {
-        LOG.warn("Failed to relay event to Jenkins server");
+        LOG.warn("Failed to relay event to Jenkins server", e);
       }
     }
   }
 
-  private String createEventHookUrl(String url) {
-    if (!url.endsWith("/")) {
-      url += "/";
+  /**
+   * Creates the request for the serialized event. The json is sent as form
+   * field or, if the jenkins plugin accepts it, directly as body which avoids
+   * the url encoding of the whole document.
+   */
+  static JenkinsRequest createRequest(String serverUrl, String url, String json, boolean jsonContent) {
+    JenkinsRequest.JenkinsRequestBuilder request = JenkinsRequest.builder()
+      .type(TYPE_EVENT)
+      .serverUrl(serverUrl)
+      .url(url);
+    if (jsonContent) {
+      request.contentType(CONTENT_TYPE_JSON).content(json);
+    } else {
+      request.formField("json", json);
     }
-    return url + EVENT_ENDPOINT;
+    return request.build();
+  }
+
+  private String createEventHookUrl(String url) {
+    return Urls.withTrailingSlash(url) + EVENT_ENDPOINT;
   }
 }
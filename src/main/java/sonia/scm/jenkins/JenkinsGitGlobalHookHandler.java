@@ -16,11 +16,7 @@
 
 package sonia.scm.jenkins;
 
-import com.google.inject.Provider;
-import sonia.scm.net.ahc.AdvancedHttpClient;
-import sonia.scm.net.ahc.AdvancedHttpRequest;
 import sonia.scm.repository.Repository;
-import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.util.Util;
 
 class JenkinsGitGlobalHookHandler extends JenkinsGlobalHookHandler {
@@ -30,16 +26,16 @@ class JenkinsGitGlobalHookHandler extends JenkinsGlobalHookHandler {
 
   private final GlobalJenkinsConfiguration configuration;
 
-  JenkinsGitGlobalHookHandler(Provider<AdvancedHttpClient> httpClientProvider, GlobalJenkinsConfiguration configuration, RepositoryServiceFactory repositoryServiceFactory) {
-    super(httpClientProvider, configuration, repositoryServiceFactory);
+  JenkinsGitGlobalHookHandler(JenkinsDispatcher dispatcher, GlobalJenkinsConfiguration configuration, ProtocolResolver protocolResolver) {
+    super(dispatcher, configuration, protocolResolver);
     this.configuration = configuration;
   }
 
   @Override
-  void addQueryParameters(Repository repository, AdvancedHttpRequest request) {
+  void addQueryParameters(Repository repository, JenkinsRequest.JenkinsRequestBuilder request) {
     super.addQueryParameters(repository, request);
     if (Util.isNotEmpty(configuration.getGitAuthenticationToken())) {
-      request.queryString("token", configuration.getGitAuthenticationToken());
+      request.parameter("token", configuration.getGitAuthenticationToken());
     }
   }
 
@@ -16,22 +16,14 @@
 
 package sonia.scm.jenkins;
 
-import com.google.inject.Provider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sonia.scm.net.ahc.AdvancedHttpClient;
-import sonia.scm.net.ahc.AdvancedHttpRequest;
-import sonia.scm.net.ahc.AdvancedHttpResponse;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryHookEvent;
-import sonia.scm.repository.api.RepositoryService;
-import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.repository.api.ScmProtocol;
 import sonia.scm.util.HttpUtil;
 import sonia.scm.util.Util;
 
-import java.io.IOException;
-
 import static sonia.scm.jenkins.Urls.fix;
 
 abstract class JenkinsGlobalHookHandler implements JenkinsHookHandler {
@@ -39,14 +31,14 @@ abstract class JenkinsGlobalHookHandler implements JenkinsHookHandler {
   private static final Logger logger = LoggerFactory.getLogger(JenkinsGlobalHookHandler.class);
 
   private final GlobalJenkinsConfiguration configuration;
-  private final Provider<AdvancedHttpClient> httpClientProvider;
-  private final RepositoryServiceFactory repositoryServiceFactory;
+  private final JenkinsDispatcher dispatcher;
+  private final ProtocolResolver protocolResolver;
 
-  JenkinsGlobalHookHandler(Provider<AdvancedHttpClient> httpClientProvider,
-                                  GlobalJenkinsConfiguration configuration, RepositoryServiceFactory repositoryServiceFactory) {
-    this.httpClientProvider = httpClientProvider;
+  JenkinsGlobalHookHandler(JenkinsDispatcher dispatcher,
+                                  GlobalJenkinsConfiguration configuration, ProtocolResolver protocolResolver) {
+    this.dispatcher = dispatcher;
     this.configuration = configuration;
-    this.repositoryServiceFactory = repositoryServiceFactory;
+    this.protocolResolver = protocolResolver;
   }
 
   @Override
@@ -57,10 +49,9 @@ abstract class JenkinsGlobalHookHandler implements JenkinsHookHandler {
 
       String urlSuffix = createUrlSuffix();
       if (Util.isNotEmpty(urlSuffix)) {
-        AdvancedHttpClient client = httpClientProvider.get();
-
-        String url = createUrl(urlSuffix);
-        sendRequest(client, url, event.getRepository());
+        for (JenkinsServer server : configuration.getServers()) {
+          sendRequest(type, server, createUrl(server, urlSuffix), event.getRepository());
+        }
       } else {
         logger.warn("repository type {} is not supported or is disabled", type);
       }
@@ -69,26 +60,27 @@ abstract class JenkinsGlobalHookHandler implements JenkinsHookHandler {
     }
   }
 
-  private void sendRequest(AdvancedHttpClient client, String url, Repository repository) {
-    try {
-      logger.info("try to access url {}", url);
-      AdvancedHttpRequest request = client.get(url).spanKind("Jenkins");
-      addQueryParameters(repository, request);
-      if (Util.isNotEmpty(configuration.getUsername())) {
-        HeaderAppenders.appendCsrfCrumbHeader(client, request, configuration.getUrl(), configuration.getUsername(), configuration.getApiToken());
-      }
-      AdvancedHttpResponse response = request.request();
-      int statusCode = response.getStatus();
-      logger.info("request returned {}", statusCode);
-    } catch (IOException ex) {
-      logger.error("could not execute http request", ex);
-    }
+  private void sendRequest(String type, JenkinsServer server, String url, Repository repository) {
+    logger.info("try to access url {}", url);
+    JenkinsRequest.JenkinsRequestBuilder request = JenkinsRequest.builder()
+      .type(type)
+      .serverUrl(server.getUrl())
+      .repositoryId(repository.getId())
+      .repository(repository.getNamespaceAndName().toString())
+      .method(JenkinsRequest.Method.GET)
+      .url(url)
+      .username(server.getUsername())
+      .apiToken(server.getApiToken())
+      .csrf(Util.isNotEmpty(server.getUsername()))
+      .coalescable(true);
+    addQueryParameters(repository, request);
+    dispatcher.dispatch(request.build());
   }
 
-  void addQueryParameters(Repository repository, AdvancedHttpRequest request) {
+  void addQueryParameters(Repository repository, JenkinsRequest.JenkinsRequestBuilder request) {
     String repositoryUrl = createRepositoryUrl(repository);
     if (Util.isNotEmpty(repositoryUrl)) {
-      request.queryString("url", fix(repositoryUrl));
+      request.parameter("url", fix(repositoryUrl));
     }
   }
 
@@ -104,20 +96,18 @@ abstract class JenkinsGlobalHookHandler implements JenkinsHookHandler {
     //J+
   }
 
-  private String createUrl(String urlSuffix) {
-    return HttpUtil.getUriWithoutEndSeperator(configuration.getUrl()).concat(urlSuffix);
+  private String createUrl(JenkinsServer server, String urlSuffix) {
+    return HttpUtil.getUriWithoutEndSeperator(server.getUrl()).concat(urlSuffix);
   }
 
   abstract String createUrlSuffix();
 
   private String createRepositoryUrl(Repository repository) {
-    try (RepositoryService repositoryService = repositoryServiceFactory.create(repository)) {
-      return repositoryService
-        .getSupportedProtocols()
-        .filter(p -> "http".equals(p.getType()))
-        .map(ScmProtocol::getUrl)
-        .findFirst()
-        .orElse(null);
-    }
+    return protocolResolver.getProtocols(repository)
+      .stream()
+      .filter(p -> "http".equals(p.getType()))
+      .map(ScmProtocol::getUrl)
+      .findFirst()
+      .orElse(null);
   }
 }
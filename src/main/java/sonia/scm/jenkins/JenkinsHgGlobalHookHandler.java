@@ -16,9 +16,6 @@
 
 package sonia.scm.jenkins;
 
-import com.google.inject.Provider;
-import sonia.scm.net.ahc.AdvancedHttpClient;
-import sonia.scm.repository.api.RepositoryServiceFactory;
 
 class JenkinsHgGlobalHookHandler extends JenkinsGlobalHookHandler {
 
@@ -27,8 +24,8 @@ class JenkinsHgGlobalHookHandler extends JenkinsGlobalHookHandler {
 
   private final GlobalJenkinsConfiguration configuration;
 
-  JenkinsHgGlobalHookHandler(Provider<AdvancedHttpClient> httpClientProvider, GlobalJenkinsConfiguration configuration, RepositoryServiceFactory repositoryServiceFactory) {
-    super(httpClientProvider, configuration, repositoryServiceFactory);
+  JenkinsHgGlobalHookHandler(JenkinsDispatcher dispatcher, GlobalJenkinsConfiguration configuration, ProtocolResolver protocolResolver) {
+    super(dispatcher, configuration, protocolResolver);
     this.configuration = configuration;
   }
 
@@ -16,19 +16,18 @@
 
 package sonia.scm.jenkins;
 
-import com.cloudogu.scm.el.ElParser;
 import com.github.legman.Subscribe;
 import com.google.inject.Inject;
-import com.google.inject.Provider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.EagerSingleton;
-import sonia.scm.net.ahc.AdvancedHttpClient;
 import sonia.scm.plugin.Extension;
 import sonia.scm.repository.PostReceiveRepositoryHookEvent;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.api.RepositoryServiceFactory;
 
+import java.util.Optional;
+
 import static sonia.scm.jenkins.JenkinsGitGlobalHookHandler.TYPE_GIT;
 import static sonia.scm.jenkins.JenkinsHgGlobalHookHandler.TYPE_MERCURIAL;
 import static sonia.scm.jenkins.JenkinsSvnGlobalHookHandler.TYPE_SUBVERSION;
@@ -38,7 +37,8 @@ import static sonia.scm.jenkins.JenkinsSvnGlobalHookHandler.TYPE_SUBVERSION;
  * This class is called after a changeset successfully pushed to a repository.
  * The jenkins hook checks if the hook is configured for this repository and
  * calls the configured jenkins ci server if a valid configuration is a
- * available. This class is a singleton, so be carefully.
+ * available. The requests to jenkins are sent in the background by the
+ * {@link JenkinsDispatcher}. This class is a singleton, so be carefully.
  * <p>
  * Extension objects in SCM-Manager:
  * https://bitbucket.org/sdorra/scm-manager/wiki/ExtensionPoints
@@ -52,9 +52,11 @@ public class JenkinsHook {
   private static final Logger logger = LoggerFactory.getLogger(JenkinsHook.class);
 
   private final JenkinsContext context;
-  private final Provider<AdvancedHttpClient> httpClientProvider;
+  private final JenkinsDispatcher dispatcher;
   private final RepositoryServiceFactory repositoryServiceFactory;
-  private final ElParser elParser;
+  private final ProtocolResolver protocolResolver;
+  private final SvnUuidCache svnUuidCache;
+  private final BuildParameterTemplates templates;
 
   /**
    * Creates a new instance of Jenkins Hook. This constructor is called by
@@ -65,20 +67,26 @@ public class JenkinsHook {
    * Available objects for injection in SCM-Manager:
    * https://bitbucket.org/sdorra/scm-manager/wiki/injectionObjects
    *
-   * @param httpClientProvider       Google Guice provider for an {@link AdvancedHttpClient}
+   * @param dispatcher               dispatcher which sends the requests to jenkins
    * @param context
    * @param repositoryServiceFactory
-   * @param elParser
+   * @param protocolResolver         cache for the protocols of repositories
+   * @param svnUuidCache             cache for the uuids of subversion repositories
+   * @param templates                cache for the build parameter templates
    */
   @Inject
-  public JenkinsHook(Provider<AdvancedHttpClient> httpClientProvider,
+  public JenkinsHook(JenkinsDispatcher dispatcher,
                      JenkinsContext context,
                      RepositoryServiceFactory repositoryServiceFactory,
-                     ElParser elParser) {
-    this.httpClientProvider = httpClientProvider;
+                     ProtocolResolver protocolResolver,
+                     SvnUuidCache svnUuidCache,
+                     BuildParameterTemplates templates) {
+    this.dispatcher = dispatcher;
     this.context = context;
     this.repositoryServiceFactory = repositoryServiceFactory;
-    this.elParser = elParser;
+    this.protocolResolver = protocolResolver;
+    this.svnUuidCache = svnUuidCache;
+    this.templates = templates;
   }
 
   /**
@@ -99,25 +107,23 @@ public class JenkinsHook {
      * log an error.
      */
     if (repository != null) {
-      GlobalJenkinsConfiguration globalConfig = context.getConfiguration();
+      JenkinsConfigurationSnapshot snapshot = context.snapshot(event);
       JenkinsHookHandler handler;
 
-      if (!globalConfig.isDisableRepositoryConfiguration()) {
-
-        // read jenkins configuration from repository
-        JenkinsConfiguration configuration = context.getConfiguration(repository);
+      Optional<JenkinsConfiguration> configuration = snapshot.getRepositoryConfiguration();
+      if (configuration.isPresent()) {
 
         // check if the configuration is valid and log error if not
-        if (configuration.isValid()) {
-          handler = new JenkinsRepositoryHookHandler(httpClientProvider, configuration, elParser);
+        if (configuration.get().isValid()) {
+          handler = new JenkinsRepositoryHookHandler(dispatcher, configuration.get(), templates);
         } else {
           logger.debug("jenkins configuration for repository {}/{} is not valid, try global configuration",
             repository.getNamespace(), repository.getName());
 
-          handler = getGlobalHookHandler(repository, globalConfig);
+          handler = getGlobalHookHandler(repository, snapshot.getGlobalConfiguration());
         }
       } else {
-        handler = getGlobalHookHandler(repository, globalConfig);
+        handler = getGlobalHookHandler(repository, snapshot.getGlobalConfiguration());
       }
 
       handler.sendRequest(event);
@@ -129,11 +135,11 @@ public class JenkinsHook {
   private JenkinsHookHandler getGlobalHookHandler(Repository repository, GlobalJenkinsConfiguration globalConfig) {
     switch (repository.getType()) {
       case TYPE_SUBVERSION:
-        return new JenkinsSvnGlobalHookHandler(httpClientProvider, globalConfig, repositoryServiceFactory);
+        return new JenkinsSvnGlobalHookHandler(dispatcher, globalConfig, repositoryServiceFactory, svnUuidCache);
       case TYPE_GIT:
-        return new JenkinsGitGlobalHookHandler(httpClientProvider, globalConfig, repositoryServiceFactory);
+        return new JenkinsGitGlobalHookHandler(dispatcher, globalConfig, protocolResolver);
       case TYPE_MERCURIAL:
-        return new JenkinsHgGlobalHookHandler(httpClientProvider, globalConfig, repositoryServiceFactory);
+        return new JenkinsHgGlobalHookHandler(dispatcher, globalConfig, protocolResolver);
       default:
         throw new IllegalStateException("unknown repository type: " + repository.getType());
     }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import sonia.scm.util.Util;
+import sonia.scm.xml.XmlEncryptionAdapter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Additional job on the jenkins server of a {@link JenkinsConfiguration}. Each
+ * job has its own branch filter and build parameters, all jobs of a
+ * repository are checked in one pass over the pushed changesets.
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+@NoArgsConstructor
+@XmlAccessorType(XmlAccessType.FIELD)
+public class JenkinsJob {
+
+  private String project;
+  @XmlJavaTypeAdapter(XmlEncryptionAdapter.class)
+  private String token;
+  private Set<String> branches = new HashSet<>();
+  private Set<BuildParameter> buildParameters = new HashSet<>();
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  private transient volatile BranchMatcher branchMatcher;
+
+  public JenkinsJob(String project, String token, Set<String> branches, Set<BuildParameter> buildParameters) {
+    this.project = project;
+    this.token = token;
+    this.branches = branches;
+    this.buildParameters = buildParameters;
+  }
+
+  public Set<String> getBranches() {
+    if (branches == null) {
+      return new HashSet<>();
+    }
+    return branches;
+  }
+
+  public Set<BuildParameter> getBuildParameters() {
+    if (buildParameters == null) {
+      return new HashSet<>();
+    }
+    return buildParameters;
+  }
+
+  public void setBranches(Set<String> branches) {
+    this.branches = branches;
+    this.branchMatcher = null;
+  }
+
+  /**
+   * Returns the compiled matcher for the branches of this job.
+   */
+  BranchMatcher getBranchMatcher() {
+    BranchMatcher matcher = branchMatcher;
+    if (matcher == null) {
+      matcher = BranchMatcher.compile(getBranches());
+      branchMatcher = matcher;
+    }
+    return matcher;
+  }
+
+  boolean isValid() {
+    return Util.isNotEmpty(project);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Records the micrometer metrics of the jenkins deliveries in the
+ * {@link MeterRegistry} of SCM-Manager. All meters are tagged with the jenkins
+ * server and the type of the request ({@code repository}, {@code git},
+ * {@code hg}, {@code svn} or {@code event}), request timers and failure
+ * counters additionally with the class of the status code.
+ */
+@Singleton
+class JenkinsMetrics {
+
+  static final String REQUEST = "scm.jenkins.request";
+  static final String REQUEST_FAILURES = "scm.jenkins.request.failures";
+  static final String CRUMB = "scm.jenkins.crumb";
+  static final String CRUMB_COLLAPSED = "scm.jenkins.crumb.collapsed";
+  static final String QUEUE_WAIT = "scm.jenkins.queue.wait";
+  static final String DELIVERY_FAILURES = "scm.jenkins.delivery.failures";
+  static final String CONFIG_CACHE = "scm.jenkins.config.cache";
+
+  static final String TAG_SERVER = "server";
+  static final String TAG_TYPE = "type";
+  static final String TAG_STATUS = "status";
+  static final String TAG_SCOPE = "scope";
+  static final String TAG_RESULT = "result";
+
+  static final String SCOPE_GLOBAL = "global";
+  static final String SCOPE_REPOSITORY = "repository";
+
+  static final String STATUS_IO_ERROR = "io_error";
+  static final String STATUS_CIRCUIT_OPEN = "circuit_open";
+
+  private final MeterRegistry registry;
+
+  @Inject
+  JenkinsMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  Timer.Sample start() {
+    return Timer.start(registry);
+  }
+
+  /**
+   * Records the latency of a request to jenkins. Requests which were not
+   * answered with a 2xx or 3xx status are counted as failures as well.
+   */
+  void request(Timer.Sample sample, JenkinsRequest request, String status) {
+    sample.stop(
+      Timer.builder(REQUEST)
+        .description("Latency of requests to jenkins")
+        .tags(TAG_SERVER, server(request), TAG_TYPE, type(request), TAG_STATUS, status)
+        .register(registry)
+    );
+    if (!isSuccessful(status)) {
+      failure(request, status);
+    }
+  }
+
+  /**
+   * Counts a request to jenkins which has failed or was not sent at all.
+   */
+  void failure(JenkinsRequest request, String status) {
+    Counter.builder(REQUEST_FAILURES)
+      .description("Failed requests to jenkins")
+      .tags(TAG_SERVER, server(request), TAG_TYPE, type(request), TAG_STATUS, status)
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Records the latency of a request to the crumb issuer of jenkins.
+   */
+  void crumb(Timer.Sample sample, String serverUrl, String status) {
+    sample.stop(
+      Timer.builder(CRUMB)
+        .description("Latency of requests to the csrf crumb issuer of jenkins")
+        .tags(TAG_SERVER, serverUrl, TAG_STATUS, status)
+        .register(registry)
+    );
+  }
+
+  /**
+   * Counts a caller which has joined an in-flight request to the crumb issuer
+   * instead of sending its own.
+   */
+  void crumbCollapsed(String serverUrl) {
+    Counter.builder(CRUMB_COLLAPSED)
+      .description("Csrf crumb lookups which joined an in-flight request to the crumb issuer")
+      .tags(TAG_SERVER, serverUrl)
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Records the time a request has waited in the queue of the dispatcher.
+   */
+  void queueWait(Timer.Sample sample, JenkinsRequest request) {
+    sample.stop(
+      Timer.builder(QUEUE_WAIT)
+        .description("Time jenkins requests wait in the dispatch queue")
+        .tags(TAG_SERVER, server(request), TAG_TYPE, type(request))
+        .register(registry)
+    );
+  }
+
+  /**
+   * Counts a request which was given up or dropped by the dispatcher.
+   */
+  void deliveryFailure(JenkinsRequest request) {
+    Counter.builder(DELIVERY_FAILURES)
+      .description("Jenkins requests which could not be delivered")
+      .tags(TAG_SERVER, server(request), TAG_TYPE, type(request))
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Counts a lookup of a jenkins configuration, which was either answered from
+   * memory or read from the store.
+   */
+  void configCache(String scope, boolean hit) {
+    Counter.builder(CONFIG_CACHE)
+      .description("Lookups of jenkins configurations")
+      .tags(TAG_SCOPE, scope, TAG_RESULT, hit ? "hit" : "miss")
+      .register(registry)
+      .increment();
+  }
+
+  static String statusClass(int statusCode) {
+    return (statusCode / 100) + "xx";
+  }
+
+  private static boolean isSuccessful(String status) {
+    return status.equals("2xx") || status.equals("3xx");
+  }
+
+  private static String server(JenkinsRequest request) {
+    return request.getServerUrl() != null ? request.getServerUrl() : "unknown";
+  }
+
+  private static String type(JenkinsRequest request) {
+    return request.getType() != null ? request.getType() : "unknown";
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.SCMContextProvider;
+import sonia.scm.security.CipherHandler;
+import sonia.scm.security.CipherUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable, append-only log of the {@link JenkinsRequest}s which are not yet
+ * delivered. The {@link JenkinsDispatcher} appends every request before it
+ * is sent and acknowledges it after jenkins has answered. Requests which are
+ * still pending on startup are replayed.
+ * <p>
+ * Every line of the log is either an appended request or an acknowledgement.
+ * Requests are stored encrypted, because they contain api tokens. Appends are
+ * synced to disk in groups: a writer which finds its append already synced by
+ * another writer does not sync again. The log is rewritten with the pending
+ * requests only, once enough requests have been acknowledged.
+ * <p>
+ * Failures to open or write the log are thrown as {@link UncheckedIOException},
+ * failures to sync or compact it are logged and the log is used as before.
+ */
+@Singleton
+public class JenkinsOutbox {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JenkinsOutbox.class);
+
+  static final String FILE_NAME = "outbox.log";
+  static final int COMPACTION_THRESHOLD = 1000;
+  static final Duration MAX_AGE = Duration.ofDays(1);
+
+  private static final String APPEND = "A";
+  private static final String ACKNOWLEDGE = "K";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private final Path file;
+  private final CipherHandler cipher;
+  private final Clock clock;
+
+  private final Object syncLock = new Object();
+  private final Map<Long, Entry> pending = new LinkedHashMap<>();
+
+  // written while holding this and syncLock, read while holding one of them
+  private FileChannel channel;
+  private long nextId;
+  private long acknowledged;
+  private volatile long written;
+  private long synced;
+
+  @Inject
+  public JenkinsOutbox(SCMContextProvider contextProvider) {
+    this(
+      contextProvider.getBaseDirectory().toPath().resolve("var").resolve("jenkins"),
+      CipherUtil.getInstance().getCipherHandler(),
+      Clock.systemUTC()
+    );
+  }
+
+  @VisibleForTesting
+  JenkinsOutbox(Path directory, CipherHandler cipher, Clock clock) {
+    this.file = directory.resolve(FILE_NAME);
+    this.cipher = cipher;
+    this.clock = clock;
+  }
+
+  /**
+   * Appends the request to the log and syncs it to disk.
+   *
+   * @param request request to store
+   * @return id of the entry, which is used to acknowledge the delivery
+   */
+  long append(JenkinsRequest request) {
+    Entry entry;
+    long sequence;
+    synchronized (this) {
+      open();
+      entry = new Entry(++nextId, clock.instant(), request);
+      write(APPEND + " " + entry.getId() + " " + entry.getCreated().toEpochMilli() + " " + encrypt(request));
+      pending.put(entry.getId(), entry);
+      sequence = ++written;
+    }
+    sync(sequence);
+    return entry.getId();
+  }
+
+  /**
+   * Marks the entry as delivered. Acknowledgements are not synced to disk,
+   * in the worst case a request is sent twice after a crash.
+   *
+   * @param id id of the entry
+   */
+  synchronized void acknowledge(long id) {
+    if (pending.remove(id) != null) {
+      open();
+      write(ACKNOWLEDGE + " " + id);
+      written++;
+      if (++acknowledged >= COMPACTION_THRESHOLD) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * Reads the log and returns all requests which were not acknowledged.
+   * Requests older than {@link #MAX_AGE} are dropped.
+   *
+   * @return pending entries in the order of their creation
+   */
+  synchronized List<Entry> pending() {
+    open();
+    Instant oldest = clock.instant().minus(MAX_AGE);
+    List<Entry> entries = new ArrayList<>();
+    for (Entry entry : new ArrayList<>(pending.values())) {
+      if (entry.getCreated().isBefore(oldest)) {
+        LOG.warn("dropping jenkins {} request to {} from outbox, because it is too old", entry.getRequest().getType(), entry.getRequest().getServerUrl());
+        acknowledge(entry.getId());
+      } else {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Closes the log file.
+   */
+  synchronized void close() {
+    synchronized (syncLock) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          LOG.warn("failed to close jenkins outbox", ex);
+        }
+        channel = null;
+      }
+    }
+  }
+
+  private void sync(long sequence) {
+    synchronized (syncLock) {
+      if (synced >= sequence || channel == null) {
+        return;
+      }
+      long target = written;
+      try {
+        channel.force(false);
+        synced = target;
+      } catch (IOException ex) {
+        LOG.warn("failed to sync jenkins outbox, requests may be lost on a crash", ex);
+      }
+    }
+  }
+
+  private void open() {
+    if (channel == null) {
+      try {
+        Files.createDirectories(file.getParent());
+        if (Files.exists(file)) {
+          read();
+        }
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        synchronized (syncLock) {
+          channel = opened;
+        }
+        if (acknowledged > 0) {
+          compact();
+        }
+      } catch (IOException ex) {
+        throw new UncheckedIOException("failed to open jenkins outbox", ex);
+      }
+    }
+  }
+
+  private void read() throws IOException {
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      try {
+        readLine(line);
+      } catch (Exception ex) {
+        // the last line could be incomplete, if the server crashed while writing
+        LOG.warn("skipping unreadable line of jenkins outbox", ex);
+      }
+    }
+  }
+
+  private void readLine(String line) throws IOException {
+    String[] parts = line.split(" ", 4);
+    long id = Long.parseLong(parts[1]);
+    nextId = Math.max(nextId, id);
+    if (APPEND.equals(parts[0])) {
+      Instant created = Instant.ofEpochMilli(Long.parseLong(parts[2]));
+      pending.put(id, new Entry(id, created, decrypt(parts[3])));
+    } else if (ACKNOWLEDGE.equals(parts[0]) && pending.remove(id) != null) {
+      acknowledged++;
+    }
+  }
+
+  private void compact() {
+    // a failed compaction is retried after the next batch of acknowledgements
+    acknowledged = 0;
+    Path compacted = file.resolveSibling(FILE_NAME + ".tmp");
+    try {
+      List<String> lines = new ArrayList<>();
+      for (Entry entry : pending.values()) {
+        lines.add(APPEND + " " + entry.getId() + " " + entry.getCreated().toEpochMilli() + " " + encrypt(entry.getRequest()));
+      }
+      Files.write(compacted, lines, StandardCharsets.UTF_8);
+    } catch (IOException ex) {
+      LOG.warn("failed to compact jenkins outbox", ex);
+      return;
+    }
+    synchronized (syncLock) {
+      try {
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException ex) {
+        LOG.warn("failed to replace jenkins outbox with compacted log, keep using the old log", ex);
+      }
+      try {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      } catch (IOException ex) {
+        channel = null;
+        throw new UncheckedIOException("failed to reopen jenkins outbox", ex);
+      }
+      try {
+        channel.force(false);
+        synced = written;
+      } catch (IOException ex) {
+        LOG.warn("failed to sync compacted jenkins outbox", ex);
+      }
+    }
+  }
+
+  private void write(String line) {
+    ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException("failed to write jenkins outbox", ex);
+    }
+  }
+
+  private String encrypt(JenkinsRequest request) {
+    try {
+      return cipher.encode(mapper.writeValueAsString(request));
+    } catch (IOException ex) {
+      throw new UncheckedIOException("failed to serialize jenkins request", ex);
+    }
+  }
+
+  private JenkinsRequest decrypt(String value) throws IOException {
+    return mapper.readValue(cipher.decode(value), JenkinsRequest.class);
+  }
+
+  @Value
+  static class Entry {
+    long id;
+    Instant created;
+    JenkinsRequest request;
+  }
+}
@@ -28,22 +28,22 @@ import jakarta.inject.Inject;
 @EagerSingleton
 public class JenkinsRepositoryEventRelay {
 
-  private final JenkinsEventRelay jenkinsEventRelay;
+  private final NavigatorEventDebouncer navigatorEventDebouncer;
 
   @Inject
-  public JenkinsRepositoryEventRelay(JenkinsEventRelay jenkinsEventRelay) {
-    this.jenkinsEventRelay = jenkinsEventRelay;
+  public JenkinsRepositoryEventRelay(NavigatorEventDebouncer navigatorEventDebouncer) {
+    this.navigatorEventDebouncer = navigatorEventDebouncer;
   }
 
   @Subscribe
   public void handleAuthorizationEvent(AuthorizationChangedEvent event) {
-    jenkinsEventRelay.send(new JenkinsEventDto(EventTarget.NAVIGATOR));
+    navigatorEventDebouncer.trigger();
   }
 
   @Subscribe
   public void handleRepositoryModificationEvent(RepositoryModificationEvent event) {
     if (!event.getItem().getName().equals(event.getItemBeforeModification().getName())) {
-      jenkinsEventRelay.send(new JenkinsEventDto(EventTarget.NAVIGATOR));
+      navigatorEventDebouncer.trigger();
     }
   }
 }
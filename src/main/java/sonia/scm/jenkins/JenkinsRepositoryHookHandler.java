@@ -16,27 +16,26 @@
 
 package sonia.scm.jenkins;
 
-import com.cloudogu.scm.el.ElParser;
 import com.cloudogu.scm.el.env.ImmutableEncodedChangeset;
 import com.cloudogu.scm.el.env.ImmutableEncodedRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sonia.scm.net.ahc.AdvancedHttpClient;
-import sonia.scm.net.ahc.AdvancedHttpRequestWithBody;
 import sonia.scm.repository.Changeset;
 import sonia.scm.repository.RepositoryHookEvent;
+import sonia.scm.repository.api.HookContext;
+import sonia.scm.repository.api.HookFeature;
 import sonia.scm.util.HttpUtil;
 import sonia.scm.util.Util;
 
-import jakarta.inject.Provider;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
 
-import static sonia.scm.jenkins.HeaderAppenders.appendAuthenticationHeader;
-import static sonia.scm.jenkins.HeaderAppenders.appendCsrfCrumbHeader;
 import static sonia.scm.jenkins.Urls.escape;
 
 /**
@@ -45,36 +44,51 @@ import static sonia.scm.jenkins.Urls.escape;
 public class JenkinsRepositoryHookHandler implements JenkinsHookHandler {
 
   public static final String PARAMETER_TOKEN = "token";
+  static final String TYPE_REPOSITORY = "repository";
   private static final Logger logger = LoggerFactory.getLogger(JenkinsRepositoryHookHandler.class);
 
   private final JenkinsConfiguration configuration;
-  private final Provider<AdvancedHttpClient> httpClientProvider;
-  private final ElParser elParser;
+  private final JenkinsDispatcher dispatcher;
+  private final BuildParameterTemplates templates;
 
-  public JenkinsRepositoryHookHandler(Provider<AdvancedHttpClient> httpClientProvider,
+  public JenkinsRepositoryHookHandler(JenkinsDispatcher dispatcher,
                                       JenkinsConfiguration configuration,
-                                      ElParser elParser) {
-    this.httpClientProvider = httpClientProvider;
+                                      BuildParameterTemplates templates) {
+    this.dispatcher = dispatcher;
     this.configuration = configuration;
-    this.elParser = elParser;
+    this.templates = templates;
   }
 
   @Override
   public void sendRequest(RepositoryHookEvent event) {
-    if (configuration.getBranches().isEmpty()) {
-      logger.debug("branch list is empty, send request");
-      handleRepositoryEvent(configuration, event);
+    PushedChangesets changesets = new PushedChangesets(event.getContext());
+    List<JenkinsJob> jobs = new ArrayList<>();
+    List<BranchMatcher> branchMatchers = new ArrayList<>();
+    branchMatchers.add(configuration.getBranchMatcher());
+    for (JenkinsJob job : configuration.getJobs()) {
+      if (job.isValid()) {
+        jobs.add(job);
+        branchMatchers.add(job.getBranchMatcher());
+      }
+    }
+
+    boolean[] matches = findMatchingBranches(branchMatchers, event.getContext(), changesets);
+    if (matches[0]) {
+      handleRepositoryEvent(configuration, event, changesets);
     } else {
-      if (isInBranchSet(configuration.getBranches(), event.getContext().getChangesetProvider().getChangesets())) {
-        handleRepositoryEvent(configuration, event);
+      logger.debug("changesets does not contain configured branches");
+    }
+    for (int i = 0; i < jobs.size(); i++) {
+      if (matches[i + 1]) {
+        handleJob(jobs.get(i), event, changesets);
       } else {
-        logger.debug("changesets does not contain configured branches");
+        logger.debug("changesets does not contain branches of job {}", jobs.get(i).getProject());
       }
     }
   }
 
-  private String createBaseUrl(JenkinsConfiguration configuration) {
-    String url = configuration.getUrl();
+  private String createBaseUrl(JenkinsTarget target) {
+    String url = target.getUrl();
 
     if (!url.endsWith("/")) {
       url = url.concat("/");
@@ -87,142 +101,153 @@ public class JenkinsRepositoryHookHandler implements JenkinsHookHandler {
    * Creates the url to the remote trigger servlet of jenkins. The method is
    * visible to the package for testing.
    *
-   * @param configuration jenkins configuration
+   * @param target jenkins job
    * @return the url to the remote trigger servlet of jenkins
    */
-  String createUrl(JenkinsConfiguration configuration) {
-    String url = createBaseUrl(configuration);
+  String createUrl(JenkinsTarget target) {
+    String url = createBaseUrl(target);
 
     //J-
     // url encode project name, see http://goo.gl/v8Rond
     return escape(
       url.concat("job/")
-        .concat(configuration.getProject())
+        .concat(target.getProject())
         .concat("/build")
     );
     //J+
   }
 
   /**
-   * Handles the repository event. Checks the configuration for the repository
-   * and calls the jenkins server.
+   * Handles the repository event. Creates one request for each configured
+   * jenkins target and passes them to the dispatcher, which sends them
+   * concurrently. The build parameters are evaluated only once for all
+   * targets.
    *
    * @param configuration jenkins configuration
+   * @param changesets    lazy view on the pushed changesets
    */
-  private void handleRepositoryEvent(JenkinsConfiguration configuration, RepositoryHookEvent event) {
-    String url = createUrl(configuration);
-
-    if (logger.isInfoEnabled()) {
-      logger.info("call jenkins at {}", url);
-    }
-
-    try {
-      sendRequest(configuration, event, url);
-    } catch (IOException ex) {
-      logger.error("could not send request to jenkins", ex);
+  private void handleRepositoryEvent(JenkinsConfiguration configuration, RepositoryHookEvent event, PushedChangesets changesets) {
+    String buildParameters = createBuildParameters(configuration.getBuildParameters(), event, changesets);
+    for (JenkinsTarget target : configuration.getTargets()) {
+      dispatcher.dispatch(createRequest(target, event, createUrl(target).concat(buildParameters)));
     }
   }
 
   /**
-   * Send the request to the jenkins ci server to trigger a new build.
-   *
-   * @param configuration jenkins configuration
-   * @param url           url of the jenkins server
-   * @throws IOException
+   * Triggers an additional job on the jenkins server of the configuration.
+   * The requests of all jobs share the csrf crumb of the server, see
+   * {@link CsrfCrumbCache}.
    */
-  private void sendRequest(JenkinsConfiguration configuration, RepositoryHookEvent event, String url)
-    throws IOException {
-
-    /**
-     * Create a new http client from the Guice Provider.
-     */
-    AdvancedHttpClient httpClient = httpClientProvider.get();
-    url = appendBuildParameters(configuration, event, url);
+  private void handleJob(JenkinsJob job, RepositoryHookEvent event, PushedChangesets changesets) {
+    JenkinsTarget target = configuration.getTarget(job);
+    String buildParameters = createBuildParameters(job.getBuildParameters(), event, changesets);
+    dispatcher.dispatch(createRequest(target, event, createUrl(target).concat(buildParameters)));
+  }
 
-    // retrive authentication token
-    AdvancedHttpRequestWithBody request = httpClient.post(url).spanKind("Jenkins");
-    String token = configuration.getToken();
+  private JenkinsRequest createRequest(JenkinsTarget target, RepositoryHookEvent event, String url) {
+    JenkinsRequest.JenkinsRequestBuilder request = JenkinsRequest.builder()
+      .type(TYPE_REPOSITORY)
+      .serverUrl(target.getUrl())
+      .repositoryId(event.getRepository().getId())
+      .repository(event.getRepository().getNamespaceAndName().toString())
+      .url(url)
+      .username(target.getUsername())
+      .apiToken(target.getApiToken())
+      .authenticate(true)
+      .csrf(target.isCsrf())
+      .coalescable(true);
+
+    String token = target.getToken();
     // check if the token is not empty.
     if (Util.isNotEmpty(token)) {
 
       // add the token as parameter for the request
-      request.queryString(PARAMETER_TOKEN, token);
+      request.parameter(PARAMETER_TOKEN, token);
     } else if (logger.isDebugEnabled()) {
-      logger.debug("no project token is available");
-    }
-
-    appendAuthenticationHeader(request, configuration.getUsername(), configuration.getApiToken());
-    if (configuration.isCsrf()) {
-      appendCsrfCrumbHeader(httpClient, request, configuration.getUrl(), configuration.getUsername(), configuration.getApiToken());
+      logger.debug("no project token is available for {}", target.getProject());
     }
 
-    /**
-     * execute the http post request with the http client and
-     * fetch the status code of the response.
-     */
-    int sc = request.request().getStatus();
-
-    if (sc >= 400) {
-      logger.error("jenkins returned status code {}", sc);
-    } else if (logger.isInfoEnabled()) {
-      logger.info("jenkins hook successfully submitted");
-    }
+    return request.build();
   }
 
-  private boolean hasChangeset(RepositoryHookEvent event) {
-    return event.getContext() != null
-      && event.getContext().getChangesetProvider().getChangesets() != null
-      && event.getContext().getChangesetProvider().getChangesets().iterator().hasNext();
-  }
-
-  private String appendBuildParameters(JenkinsConfiguration configuration, RepositoryHookEvent event, String url) {
-    Set<BuildParameter> buildParameters = configuration.getBuildParameters();
+  private String createBuildParameters(Set<BuildParameter> buildParameters, RepositoryHookEvent event, PushedChangesets changesets) {
+    if (buildParameters.isEmpty()) {
+      return "";
+    }
 
     Map<String, Object> env = new HashMap<>();
 
     env.put("repository", new ImmutableEncodedRepository(event.getRepository()));
 
-    if (hasChangeset(event)) {
-      ImmutableEncodedChangeset iec = new ImmutableEncodedChangeset(
-        event.getContext().getChangesetProvider().getChangesets().iterator().next()
-      );
+    changesets.first().ifPresent(changeset -> {
+      ImmutableEncodedChangeset iec = new ImmutableEncodedChangeset(changeset);
       env.put("changeset", iec);
       env.put("commit", iec);
-    }
+    });
+
+    StringBuilder builder = new StringBuilder("WithParameters?");
+    buildParameters.forEach(
+      parameter -> builder
+        .append(HttpUtil.encode(parameter.getName()))
+        .append("=")
+        // First decode before encode to avoid parsing errors from jexl like "@"
+        .append(HttpUtil.encode(HttpUtil.decode(templates.evaluate(parameter.getValue(), env))))
+        .append("&")
+    );
+    return builder.substring(0, builder.length() - 1);
+  }
 
-    if (!buildParameters.isEmpty()) {
-      StringBuilder builder = new StringBuilder(url);
-      builder.append("WithParameters?");
-      buildParameters.forEach(
-        parameter -> builder
-          .append(HttpUtil.encode(parameter.getName()))
-          .append("=")
-          // First decode before encode to avoid parsing errors from jexl like "@"
-          .append(HttpUtil.encode(HttpUtil.decode(elParser.parse(parameter.getValue()).evaluate(env))))
-          .append("&")
-      );
-      url = builder.substring(0, builder.length() - 1);
+  /**
+   * Checks for every branch matcher whether one of the pushed branches
+   * matches. The created or modified branches of the branch provider are used,
+   * if the repository type supports them. Otherwise the branches of the
+   * changesets are checked in a single pass, which stops as soon as every
+   * matcher has found a branch.
+   */
+  private boolean[] findMatchingBranches(List<BranchMatcher> branchMatchers, HookContext context, PushedChangesets changesets) {
+    boolean[] matches = new boolean[branchMatchers.size()];
+    int[] pending = {0};
+    for (int i = 0; i < matches.length; i++) {
+      if (branchMatchers.get(i).isEmpty()) {
+        logger.debug("branch list is empty, send request");
+        matches[i] = true;
+      } else {
+        pending[0]++;
+      }
+    }
+    if (pending[0] == 0) {
+      return matches;
     }
 
-    return url;
-  }
-
-  private boolean isInBranchSet(Set<String> branchSet,
-                                Iterable<Changeset> changesets) {
-    for (Changeset changeset : changesets) {
-      if (isInBranchSet(branchSet, changeset)) {
-        return true;
+    if (context.isFeatureSupported(HookFeature.BRANCH_PROVIDER)) {
+      for (String branch : context.getBranchProvider().getCreatedOrModified()) {
+        for (int i = 0; i < matches.length; i++) {
+          if (!matches[i] && branchMatchers.get(i).matches(branch)) {
+            logger.debug("found branch {}, send request", branch);
+            matches[i] = true;
+          }
+        }
       }
+    } else {
+      changesets.anyMatch(changeset -> {
+        for (int i = 0; i < matches.length; i++) {
+          if (!matches[i] && isInBranchSet(branchMatchers.get(i), changeset)) {
+            matches[i] = true;
+            pending[0]--;
+          }
+        }
+        return pending[0] == 0;
+      });
     }
-    return false;
+    return matches;
   }
 
-  private boolean isInBranchSet(Set<String> branchSet, Changeset changeset) {
+  private boolean isInBranchSet(BranchMatcher branchMatcher, Changeset changeset) {
     List<String> branches = changeset.getBranches();
 
     if (Util.isNotEmpty(branches)) {
       for (String branch : branches) {
-        if (branchSet.contains(branch)) {
+        if (branchMatcher.matches(branch)) {
           logger.debug("found branch {} at {}, send request", branch, changeset.getId());
           return true;
         }
@@ -231,4 +256,66 @@ public class JenkinsRepositoryHookHandler implements JenkinsHookHandler {
 
     return false;
   }
+
+  /**
+   * Lazy view on the changesets of a push. The changesets are requested from
+   * the hook context at most once and only if they are needed. Because
+   * changeset providers could create the changesets while they are iterated,
+   * the changesets are never iterated further than required.
+   */
+  private static final class PushedChangesets {
+
+    private final HookContext context;
+
+    private boolean requested;
+    private Iterable<Changeset> changesets;
+    private Changeset first;
+
+    private PushedChangesets(HookContext context) {
+      this.context = context;
+    }
+
+    /**
+     * Returns {@code true} if one changeset matches the predicate. The
+     * iteration stops at the first match.
+     */
+    boolean anyMatch(Predicate<Changeset> predicate) {
+      Iterable<Changeset> all = get();
+      if (all == null) {
+        return false;
+      }
+      for (Changeset changeset : all) {
+        if (first == null) {
+          first = changeset;
+        }
+        if (predicate.test(changeset)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    Optional<Changeset> first() {
+      if (first == null) {
+        Iterable<Changeset> all = get();
+        if (all != null) {
+          Iterator<Changeset> iterator = all.iterator();
+          if (iterator.hasNext()) {
+            first = iterator.next();
+          }
+        }
+      }
+      return Optional.ofNullable(first);
+    }
+
+    private Iterable<Changeset> get() {
+      if (!requested) {
+        requested = true;
+        if (context != null) {
+          changesets = context.getChangesetProvider().getChangesets();
+        }
+      }
+      return changesets;
+    }
+  }
 }
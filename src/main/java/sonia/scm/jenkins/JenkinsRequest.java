@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.Map;
+
+/**
+ * Immutable description of a single http request to a jenkins server. The
+ * request is created on the push path and executed later by the
+ * {@link JenkinsDispatcher}, so it must not reference the hook context.
+ * The request is serializable with jackson, so that it could be stored in the
+ * {@link JenkinsOutbox}.
+ */
+@Value
+@Builder
+@Jacksonized
+class JenkinsRequest {
+
+  enum Method {
+    GET, POST
+  }
+
+  /**
+   * Kind of the request (e.g. repository, git, svn), used for logging.
+   */
+  String type;
+  /**
+   * Base url of the jenkins server, used to fetch the csrf crumb.
+   */
+  String serverUrl;
+  /**
+   * Id and name ({@code namespace/name}) of the repository which has caused
+   * the request, used for the {@link DeliveryHistory}.
+   */
+  String repositoryId;
+  String repository;
+  @Builder.Default
+  Method method = Method.POST;
+  String url;
+  @Singular
+  Map<String, String> parameters;
+  String username;
+  String apiToken;
+  boolean authenticate;
+  boolean csrf;
+  String contentType;
+  String content;
+  @Singular
+  Map<String, String> formFields;
+  /**
+   * Equal requests within the coalesce window may be merged, because they
+   * only trigger a build or a scm poll, see {@link RequestCoalescer}.
+   */
+  boolean coalescable;
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import lombok.extern.slf4j.Slf4j;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.net.ahc.AdvancedHttpRequestWithBody;
+import sonia.scm.net.ahc.AdvancedHttpResponse;
+import sonia.scm.net.ahc.BaseHttpRequest;
+import sonia.scm.net.ahc.FormContentBuilder;
+
+import java.io.IOException;
+
+import static sonia.scm.jenkins.HeaderAppenders.appendAuthenticationHeader;
+import static sonia.scm.jenkins.HeaderAppenders.appendCsrfCrumbHeader;
+
+/**
+ * Executes a {@link JenkinsRequest} with the {@link AdvancedHttpClient}.
+ * Csrf crumbs are taken from the {@link CsrfCrumbCache}. If jenkins rejects a
+ * request because of its crumb, the crumb is invalidated and the request is
+ * retried once with a fresh crumb. Other 403 responses, e.g. because of
+ * missing permissions, are not retried. Requests to a server whose
+ * {@link JenkinsCircuitBreaker circuit} is open are not sent at all.
+ * Latency and failures are recorded with the {@link JenkinsMetrics}.
+ */
+@Slf4j
+class JenkinsRequestSender {
+
+  private static final String SPAN_KIND = "Jenkins";
+  private static final String INVALID_CRUMB_MESSAGE = "No valid crumb was included in the request";
+
+  private final Provider<AdvancedHttpClient> httpClientProvider;
+  private final CsrfCrumbCache crumbCache;
+  private final JenkinsCircuitBreaker circuitBreaker;
+  private final JenkinsMetrics metrics;
+
+  @Inject
+  JenkinsRequestSender(Provider<AdvancedHttpClient> httpClientProvider, CsrfCrumbCache crumbCache, JenkinsCircuitBreaker circuitBreaker, JenkinsMetrics metrics) {
+    this.httpClientProvider = httpClientProvider;
+    this.crumbCache = crumbCache;
+    this.circuitBreaker = circuitBreaker;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sends the request and returns the status code of the jenkins response.
+   *
+   * @param jenkinsRequest request to send
+   * @return http status code
+   * @throws IOException if the jenkins server could not be reached or its
+   *                     circuit is open
+   */
+  int send(JenkinsRequest jenkinsRequest) throws IOException {
+    try {
+      circuitBreaker.acquire(jenkinsRequest.getServerUrl());
+    } catch (CircuitOpenException ex) {
+      metrics.failure(jenkinsRequest, JenkinsMetrics.STATUS_CIRCUIT_OPEN);
+      throw ex;
+    }
+    Timer.Sample sample = metrics.start();
+    String status = JenkinsMetrics.STATUS_IO_ERROR;
+    boolean available = false;
+    try {
+      AdvancedHttpClient client = httpClientProvider.get();
+      log.info("call jenkins at {}", jenkinsRequest.getUrl());
+
+      AdvancedHttpResponse response = execute(client, jenkinsRequest);
+      int statusCode = response.getStatus();
+      if (jenkinsRequest.isCsrf() && isCrumbRejected(statusCode, response)) {
+        log.debug("jenkins rejected request to {}, retry with new csrf crumb", jenkinsRequest.getServerUrl());
+        crumbCache.invalidate(jenkinsRequest.getServerUrl(), jenkinsRequest.getUsername());
+        statusCode = execute(client, jenkinsRequest).getStatus();
+      }
+
+      logStatusCode(jenkinsRequest, statusCode);
+      status = JenkinsMetrics.statusClass(statusCode);
+      available = !RetryPolicy.isRetryable(statusCode);
+      return statusCode;
+    } finally {
+      metrics.request(sample, jenkinsRequest, status);
+      if (available) {
+        circuitBreaker.success(jenkinsRequest.getServerUrl());
+      } else {
+        circuitBreaker.failure(jenkinsRequest.getServerUrl());
+      }
+    }
+  }
+
+  private boolean isCrumbRejected(int statusCode, AdvancedHttpResponse response) {
+    if (statusCode != 403) {
+      return false;
+    }
+    try {
+      String content = response.contentAsString();
+      return content != null && content.contains(INVALID_CRUMB_MESSAGE);
+    } catch (IOException ex) {
+      log.debug("could not read body of 403 response from jenkins", ex);
+      return false;
+    }
+  }
+
+  private AdvancedHttpResponse execute(AdvancedHttpClient client, JenkinsRequest jenkinsRequest) throws IOException {
+    BaseHttpRequest<?> request = createRequest(client, jenkinsRequest);
+    jenkinsRequest.getParameters().forEach(request::queryString);
+
+    if (jenkinsRequest.isAuthenticate()) {
+      appendAuthenticationHeader(request, jenkinsRequest.getUsername(), jenkinsRequest.getApiToken());
+    }
+    if (jenkinsRequest.isCsrf()) {
+      CsrfCrumb crumb = crumbCache.get(client, jenkinsRequest.getServerUrl(), jenkinsRequest.getUsername(), jenkinsRequest.getApiToken());
+      appendCsrfCrumbHeader(request, crumb);
+    }
+
+    return request.request();
+  }
+
+  private BaseHttpRequest<?> createRequest(AdvancedHttpClient client, JenkinsRequest jenkinsRequest) {
+    if (jenkinsRequest.getMethod() == JenkinsRequest.Method.GET) {
+      return client.get(jenkinsRequest.getUrl()).spanKind(SPAN_KIND);
+    }
+
+    AdvancedHttpRequestWithBody request = client.post(jenkinsRequest.getUrl()).spanKind(SPAN_KIND);
+    if (jenkinsRequest.getContentType() != null) {
+      request.header("Content-Type", jenkinsRequest.getContentType());
+    }
+    if (jenkinsRequest.getContent() != null) {
+      request.stringContent(jenkinsRequest.getContent());
+    }
+    if (!jenkinsRequest.getFormFields().isEmpty()) {
+      FormContentBuilder form = request.formContent();
+      jenkinsRequest.getFormFields().forEach((name, value) -> form.field(name, value));
+      form.build();
+    }
+    return request;
+  }
+
+  private void logStatusCode(JenkinsRequest jenkinsRequest, int statusCode) {
+    if (statusCode == 401) {
+      log.warn("Jenkins {} request returned {}. Please check your Jenkins server credentials in SCM-Manager settings.", jenkinsRequest.getType(), statusCode);
+    } else if (statusCode >= 400) {
+      log.error("jenkins {} request returned status code {}", jenkinsRequest.getType(), statusCode);
+    } else {
+      log.info("jenkins {} request successfully submitted, status code {}", jenkinsRequest.getType(), statusCode);
+    }
+  }
+}
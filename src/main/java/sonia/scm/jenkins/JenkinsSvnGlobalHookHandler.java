@@ -17,15 +17,10 @@
 package sonia.scm.jenkins;
 
 import com.google.common.base.Strings;
-import com.google.inject.Provider;
-import jakarta.ws.rs.core.Response;
 import lombok.extern.slf4j.Slf4j;
-import sonia.scm.net.ahc.AdvancedHttpClient;
-import sonia.scm.net.ahc.AdvancedHttpRequestWithBody;
-import sonia.scm.net.ahc.AdvancedHttpResponse;
 import sonia.scm.repository.Modifications;
+import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryHookEvent;
-import sonia.scm.repository.api.LookupCommandBuilder;
 import sonia.scm.repository.api.RepositoryService;
 import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.util.HttpUtil;
@@ -35,8 +30,6 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Optional;
 
-import static sonia.scm.jenkins.HeaderAppenders.appendCsrfCrumbHeader;
-
 @Slf4j
 public class JenkinsSvnGlobalHookHandler implements JenkinsHookHandler {
 
@@ -45,26 +38,30 @@ public class JenkinsSvnGlobalHookHandler implements JenkinsHookHandler {
   public static final String URL_SUBVERSION = "/subversion/{0}/notifyCommit/?rev={1}";
   public static final String TYPE_SUBVERSION = "svn";
 
-  private final Provider<AdvancedHttpClient> httpClientProvider;
+  private final JenkinsDispatcher dispatcher;
   private final GlobalJenkinsConfiguration configuration;
   private final RepositoryServiceFactory repositoryServiceFactory;
+  private final SvnUuidCache uuidCache;
 
-  public JenkinsSvnGlobalHookHandler(Provider<AdvancedHttpClient> httpClientProvider, GlobalJenkinsConfiguration configuration, RepositoryServiceFactory repositoryServiceFactory) {
-    this.httpClientProvider = httpClientProvider;
+  public JenkinsSvnGlobalHookHandler(JenkinsDispatcher dispatcher, GlobalJenkinsConfiguration configuration, RepositoryServiceFactory repositoryServiceFactory, SvnUuidCache uuidCache) {
+    this.dispatcher = dispatcher;
     this.configuration = configuration;
     this.repositoryServiceFactory = repositoryServiceFactory;
+    this.uuidCache = uuidCache;
   }
 
   @Override
   public void sendRequest(RepositoryHookEvent event) {
     if (Util.isNotEmpty(configuration.getUrl()) && !configuration.isDisableSubversionTrigger()) {
       try (RepositoryService repositoryService = repositoryServiceFactory.create(event.getRepository())) {
-        Optional<String> uuid = lookupUUID(repositoryService);
+        Optional<String> uuid = uuidCache.get(event.getRepository(), repositoryService);
         if (uuid.isPresent()) {
           log.debug("Lookup for svn repository uuid: {}", uuid.get());
-          String url = createUrl(event, uuid.get());
-          String content = getContent(event);
-          sendRequest(url, content);
+          String revision = getRevision(event);
+          String content = getContent(repositoryService, revision);
+          for (JenkinsServer server : configuration.getServers()) {
+            sendRequest(event.getRepository(), server, createUrl(server, revision, uuid.get()), content);
+          }
         } else {
           log.error("Could not send request: No uuid for svn repository found");
         }
@@ -72,65 +69,46 @@ public class JenkinsSvnGlobalHookHandler implements JenkinsHookHandler {
     }
   }
 
-  private void sendRequest(String url, String content) {
-    try {
-      AdvancedHttpRequestWithBody request = httpClientProvider.get()
-        .post(url)
-        .spanKind("Jenkins")
-        .basicAuth(configuration.getUsername(), configuration.getApiToken())
-        .header("Content-Type", "text/plain;charset=UTF-8")
-        .stringContent(content);
-
-
-      if (doesGlobalConfigProvideCredentials()) {
-        appendCsrfCrumbHeader(httpClientProvider.get(), request, configuration.getUrl(), configuration.getUsername(), configuration.getApiToken());
-      }
-
-      AdvancedHttpResponse response = request.request();
+  private void sendRequest(Repository repository, JenkinsServer server, String url, String content) {
+    dispatcher.dispatch(JenkinsRequest.builder()
+      .type(TYPE_SUBVERSION)
+      .serverUrl(server.getUrl())
+      .repositoryId(repository.getId())
+      .repository(repository.getNamespaceAndName().toString())
+      .url(url)
+      .username(server.getUsername())
+      .apiToken(server.getApiToken())
+      .authenticate(true)
+      .csrf(providesCredentials(server))
+      .contentType("text/plain;charset=UTF-8")
+      .content(content)
+      .build());
+  }
 
-      int statusCode = response.getStatus();
-      if (statusCode == Response.Status.UNAUTHORIZED.getStatusCode()) {
-        log.warn("Jenkins hook request returned {}. Please check your Jenkins server credentials in SCM-Manager settings.", statusCode);
-      } else {
-        log.debug("Request returned {}", statusCode);
-      }
-    } catch (IOException e) {
-      log.error("could not execute http request", e);
-    }
+  private boolean providesCredentials(JenkinsServer server) {
+    return !Strings.isNullOrEmpty(server.getUsername()) && !Strings.isNullOrEmpty(server.getApiToken());
   }
 
-  private boolean doesGlobalConfigProvideCredentials() {
-    return !Strings.isNullOrEmpty(configuration.getUsername()) && !Strings.isNullOrEmpty(configuration.getApiToken());
+  /**
+   * Returns the id of the first pushed changeset, without reading the other
+   * changesets of the push.
+   */
+  private String getRevision(RepositoryHookEvent event) {
+    return event.getContext().getChangesetProvider().getChangesets().iterator().next().getId();
   }
 
-  private String getContent(RepositoryHookEvent event) {
-    StringBuilder content = new StringBuilder();
-    try (RepositoryService service = repositoryServiceFactory.create(event.getRepository())) {
-      String revision = event.getContext().getChangesetProvider().getChangesetList().get(0).getId();
+  private String getContent(RepositoryService service, String revision) {
+    try {
       Modifications modifications = service.getModificationsCommand().revision(revision).getModifications();
-      addModificationsToContent(content, modifications);
+      return SvnChangeList.of(modifications, configuration.getSubversionChangeListLimit());
     } catch (IOException e) {
       log.error("Could not find modifications for changeset", e);
     }
-    return content.toString();
+    return "";
   }
 
-  private void addModificationsToContent(StringBuilder content, Modifications modifications) {
-    modifications.getAdded().forEach(m -> content.append("A").append("   ").append(m.getPath()).append("\n"));
-    modifications.getCopied().forEach(m -> content.append("A").append("   ").append(m.getTargetPath()).append("\n"));
-    modifications.getModified().forEach(m -> content.append("U").append("   ").append(m.getPath()).append("\n"));
-    modifications.getRenamed().forEach(m -> content.append("U").append("   ").append(m.getNewPath()).append("\n"));
-    modifications.getRemoved().forEach(m -> content.append("D").append("   ").append(m.getPath()).append("\n"));
-  }
-
-  private String createUrl(RepositoryHookEvent event, String uuid) {
-    String revision = event.getContext().getChangesetProvider().getChangesetList().get(0).getId();
+  private String createUrl(JenkinsServer server, String revision, String uuid) {
     String urlSuffix = MessageFormat.format(URL_SUBVERSION, uuid, revision);
-    return HttpUtil.getUriWithoutEndSeperator(configuration.getUrl()).concat(urlSuffix);
-  }
-
-  private Optional<String> lookupUUID(RepositoryService repositoryService) {
-    LookupCommandBuilder command = repositoryService.getLookupCommand();
-    return command.lookup(String.class, "propget", "uuid", "/");
+    return HttpUtil.getUriWithoutEndSeperator(server.getUrl()).concat(urlSuffix);
   }
 }
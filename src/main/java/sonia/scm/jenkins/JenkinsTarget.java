@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import sonia.scm.util.Util;
+import sonia.scm.xml.XmlEncryptionAdapter;
+
+/**
+ * Jenkins job which is triggered by a push to the repository. Besides the job
+ * of the {@link JenkinsConfiguration} itself, additional targets could be
+ * configured, e.g. for jobs on other jenkins servers.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@XmlAccessorType(XmlAccessType.FIELD)
+public class JenkinsTarget {
+
+  private String url;
+  private String project;
+  @XmlJavaTypeAdapter(XmlEncryptionAdapter.class)
+  private String token;
+  private String username;
+  @XmlJavaTypeAdapter(XmlEncryptionAdapter.class)
+  private String apiToken;
+  private boolean csrf;
+
+  boolean isValid() {
+    return Util.isNotEmpty(url) && Util.isNotEmpty(project);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.plugin.Extension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collapses bursts of events, which require a rescan of the organization
+ * folders in jenkins, into a single {@link EventTarget#NAVIGATOR} event. A
+ * bulk permission change or a group sync fires hundreds of authorization
+ * events, each of them would start a full rescan.
+ * <p>
+ * The event is sent when no further trigger arrived within the quiet period,
+ * but not later than the maximum delay after the first trigger of the burst.
+ * Both are read from the {@link GlobalJenkinsConfiguration}, a quiet period of
+ * zero sends every event immediately. A pending event is sent when the
+ * context is destroyed.
+ */
+@Extension
+@Singleton
+public class NavigatorEventDebouncer implements ServletContextListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NavigatorEventDebouncer.class);
+
+  static final int DEFAULT_QUIET_PERIOD = 5;
+  static final int DEFAULT_MAX_DELAY = 60;
+
+  private final JenkinsContext context;
+  private final JenkinsEventRelay relay;
+  private final ScheduledExecutorService scheduler;
+  private final Clock clock;
+
+  // guarded by this
+  private Instant burstStart;
+  private ScheduledFuture<?> pending;
+  private long generation;
+  private int collapsed;
+
+  @Inject
+  NavigatorEventDebouncer(JenkinsContext context, JenkinsEventRelay relay) {
+    this(context, relay, Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("JenkinsNavigatorEvent-%d").setDaemon(true).build()
+    ), Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  NavigatorEventDebouncer(JenkinsContext context, JenkinsEventRelay relay, ScheduledExecutorService scheduler, Clock clock) {
+    this.context = context;
+    this.relay = relay;
+    this.scheduler = scheduler;
+    this.clock = clock;
+  }
+
+  /**
+   * Requests a navigator event. The event is sent after the burst of
+   * triggers has ended.
+   */
+  void trigger() {
+    GlobalJenkinsConfiguration configuration = context.getConfiguration();
+    int quietPeriod = configuration.getNavigatorEventQuietPeriod();
+    if (quietPeriod <= 0) {
+      send();
+      return;
+    }
+    Duration quiet = Duration.ofSeconds(quietPeriod);
+    Duration maxDelay = Duration.ofSeconds(Math.max(configuration.getNavigatorEventMaxDelay(), quietPeriod));
+
+    synchronized (this) {
+      Instant now = clock.instant();
+      if (burstStart == null) {
+        burstStart = now;
+      } else {
+        pending.cancel(false);
+        collapsed++;
+      }
+      Instant deadline = now.plus(quiet);
+      Instant latest = burstStart.plus(maxDelay);
+      if (latest.isBefore(deadline)) {
+        deadline = latest;
+      }
+      long current = ++generation;
+      pending = scheduler.schedule(() -> flush(current), Duration.between(now, deadline).toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush(long expectedGeneration) {
+    int count;
+    synchronized (this) {
+      if (expectedGeneration != generation) {
+        // a newer trigger has rescheduled the event
+        return;
+      }
+      count = collapsed + 1;
+      burstStart = null;
+      pending = null;
+      collapsed = 0;
+    }
+    LOG.debug("sending navigator event for {} triggers", count);
+    send();
+  }
+
+  private void send() {
+    relay.send(new JenkinsEventDto(EventTarget.NAVIGATOR));
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    scheduler.shutdownNow();
+    boolean burst;
+    synchronized (this) {
+      burst = burstStart != null;
+      burstStart = null;
+      pending = null;
+      collapsed = 0;
+      generation++;
+    }
+    if (burst) {
+      LOG.debug("sending pending navigator event before shutdown");
+      send();
+    }
+  }
+}
@@ -16,18 +16,47 @@
 
 package sonia.scm.jenkins;
 
+import com.github.legman.Subscribe;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import jakarta.inject.Inject;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.config.ScmConfigurationChangedEvent;
+import sonia.scm.plugin.Extension;
 import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryEvent;
 import sonia.scm.repository.api.RepositoryService;
 import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.repository.api.ScmProtocol;
 
-import jakarta.inject.Inject;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-class ProtocolResolver {
+/**
+ * Resolves the protocols of a repository, which are sent to jenkins with
+ * every event and trigger. The protocols are cached per repository id, so
+ * that a push does not open a {@link RepositoryService} for every handler and
+ * relay. The cache entry of a repository is removed if the repository is
+ * modified or deleted, the whole cache is cleared if the scm configuration
+ * (e.g. the base url) changes. Protocols of other plugins, like ssh, could
+ * change without an event, so entries expire after {@link #MAX_AGE_MINUTES}.
+ */
+@Extension
+@EagerSingleton
+public class ProtocolResolver {
+
+  static final int MAX_AGE_MINUTES = 10;
+  private static final int MAXIMUM_SIZE = 1000;
 
   private final RepositoryServiceFactory repositoryServiceFactory;
+  private final Cache<String, List<ScmProtocol>> protocols = CacheBuilder.newBuilder()
+    .maximumSize(MAXIMUM_SIZE)
+    .expireAfterWrite(MAX_AGE_MINUTES, TimeUnit.MINUTES)
+    .build();
 
   @Inject
   ProtocolResolver(RepositoryServiceFactory repositoryServiceFactory) {
@@ -35,8 +64,29 @@ class ProtocolResolver {
   }
 
   List<ScmProtocol> getProtocols(Repository repository) {
+    try {
+      return protocols.get(repository.getId(), () -> resolve(repository));
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      throw new IllegalStateException("failed to resolve protocols of repository " + repository, ex.getCause());
+    }
+  }
+
+  private List<ScmProtocol> resolve(Repository repository) {
     try (final RepositoryService repositoryService = repositoryServiceFactory.create(repository)) {
-      return repositoryService.getSupportedProtocols().collect(Collectors.toList());
+      return repositoryService.getSupportedProtocols().collect(Collectors.toUnmodifiableList());
+    }
+  }
+
+  @Subscribe(async = false)
+  public void handle(RepositoryEvent event) {
+    HandlerEventType type = event.getEventType();
+    if (type == HandlerEventType.MODIFY || type == HandlerEventType.DELETE) {
+      protocols.invalidate(event.getItem().getId());
     }
   }
+
+  @Subscribe(async = false)
+  public void handle(ScmConfigurationChangedEvent event) {
+    protocols.invalidateAll();
+  }
 }
@@ -45,16 +45,20 @@ public class RepositoryLinkEnricher implements HalEnricher {
 
   @Override
   public void enrich(HalEnricherContext halEnricherContext, HalAppender halAppender) {
-    if (jenkinsContext.getConfiguration().isDisableRepositoryConfiguration()) {
-      return;
-    }
     Repository repository = halEnricherContext.oneRequireByType(Repository.class);
     if (RepositoryPermissions.custom(NAME, repository).isPermitted()) {
-      String linkBuilder = new LinkBuilder(scmPathInfoStore.get().get(), JenkinsConfigurationResource.class)
-        .method("getJenkinsConfigForRepository")
-        .parameters(repository.getNamespace(), repository.getName())
-        .href();
-      halAppender.appendLink("jenkinsConfig", linkBuilder);
+      // deliveries are caused by the global configuration as well
+      halAppender.appendLink("jenkinsDeliveries", link("getDeliveriesForRepository", repository));
+      if (!jenkinsContext.getConfiguration().isDisableRepositoryConfiguration()) {
+        halAppender.appendLink("jenkinsConfig", link("getJenkinsConfigForRepository", repository));
+      }
     }
   }
+
+  private String link(String method, Repository repository) {
+    return new LinkBuilder(scmPathInfoStore.get().get(), JenkinsConfigurationResource.class)
+      .method(method)
+      .parameters(repository.getNamespace(), repository.getName())
+      .href();
+  }
 }
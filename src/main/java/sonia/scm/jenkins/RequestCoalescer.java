@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces repeated triggers of the same jenkins job. Requests are equal, if
+ * they are sent to the same server with the same method, url and parameters,
+ * e.g. the build url of a job with its parameter set or the notifyCommit url
+ * with the url of the repository.
+ * <p>
+ * The first request is delivered immediately and opens a window. Further
+ * equal requests within the window replace each other and only the last one is
+ * delivered when the window closes, which opens the next window. So at most
+ * one request per window is sent and the last push is always delivered.
+ * Replaced requests are passed to {@link Target#superseded(long)}, so that they
+ * could be acknowledged in the {@link JenkinsOutbox}.
+ */
+class RequestCoalescer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RequestCoalescer.class);
+
+  /**
+   * Receiver of the coalesced requests.
+   */
+  interface Target {
+
+    /**
+     * Delivers the first request of a window, called by the thread which has
+     * submitted the request.
+     */
+    void deliver(long id, JenkinsRequest request);
+
+    /**
+     * Delivers the last request of a closed window, called by the scheduler.
+     */
+    void deliverPending(long id, JenkinsRequest request);
+
+    void superseded(long id);
+  }
+
+  private final ScheduledExecutorService scheduler;
+  private final Target target;
+
+  // guarded by this
+  private final Map<Key, Window> windows = new HashMap<>();
+
+  RequestCoalescer(ScheduledExecutorService scheduler, Target target) {
+    this.scheduler = scheduler;
+    this.target = target;
+  }
+
+  /**
+   * Delivers the request immediately or keeps it until the open window of
+   * equal requests is closed.
+   *
+   * @param id      id of the request in the outbox
+   * @param request request to send
+   * @param length  length of the window
+   */
+  void submit(long id, JenkinsRequest request, Duration length) {
+    Key key = Key.of(request);
+    Pending superseded = null;
+    boolean deliverNow = false;
+    synchronized (this) {
+      Window window = windows.get(key);
+      if (window == null) {
+        windows.put(key, new Window(length));
+        schedule(key, length);
+        deliverNow = true;
+      } else {
+        superseded = window.pending;
+        window.pending = new Pending(id, request);
+      }
+    }
+    if (deliverNow) {
+      target.deliver(id, request);
+    } else {
+      LOG.debug("coalescing {} request to {}", request.getType(), request.getServerUrl());
+      if (superseded != null) {
+        target.superseded(superseded.getId());
+      }
+    }
+  }
+
+  private void close(Key key) {
+    Pending pending;
+    synchronized (this) {
+      Window window = windows.get(key);
+      pending = window.pending;
+      if (pending == null) {
+        windows.remove(key);
+        return;
+      }
+      window.pending = null;
+      schedule(key, window.length);
+    }
+    target.deliverPending(pending.getId(), pending.getRequest());
+  }
+
+  private void schedule(Key key, Duration length) {
+    try {
+      scheduler.schedule(() -> close(key), length.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      // the dispatcher is stopped, the waiting request stays in the outbox
+      LOG.debug("could not schedule end of coalescing window", ex);
+    }
+  }
+
+  private static class Window {
+
+    private final Duration length;
+    private Pending pending;
+
+    private Window(Duration length) {
+      this.length = length;
+    }
+  }
+
+  @Value
+  private static class Pending {
+    long id;
+    JenkinsRequest request;
+  }
+
+  @Value
+  private static class Key {
+    String serverUrl;
+    JenkinsRequest.Method method;
+    String url;
+    Map<String, String> parameters;
+
+    static Key of(JenkinsRequest request) {
+      return new Key(request.getServerUrl(), request.getMethod(), request.getUrl(), request.getParameters());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a failed delivery is retried and how long to wait before.
+ * Only temporary failures are retried: responses with status 502, 503 or 504
+ * and io errors like a refused or reset connection or a timeout. Permanent io
+ * errors, e.g. an unknown host or a failed tls handshake, are not retried. The delay grows
+ * exponentially with the consecutive failures of the jenkins server, so that
+ * all requests to the same unavailable server back off together. Like in the
+ * {@link JenkinsCircuitBreaker}, a trailing slash of the server url is ignored.
+ * Half of the delay is random, so that retries of many requests do not hit the
+ * server at the same time.
+ */
+class RetryPolicy {
+
+  static final Duration DEFAULT_BASE_DELAY = Duration.ofSeconds(1);
+  static final Duration DEFAULT_MAX_DELAY = Duration.ofMinutes(5);
+
+  private final Duration baseDelay;
+  private final Duration maxDelay;
+  private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+
+  RetryPolicy() {
+    this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+  }
+
+  RetryPolicy(Duration baseDelay, Duration maxDelay) {
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+  }
+
+  static boolean isRetryable(int status) {
+    return status == 502 || status == 503 || status == 504;
+  }
+
+  /**
+   * Returns {@code true} for io errors which could disappear with the next
+   * attempt: refused, reset or closed connections and timeouts.
+   *
+   * @param ex io error of the attempt
+   */
+  static boolean isRetryable(IOException ex) {
+    return ex instanceof SocketException || ex instanceof InterruptedIOException;
+  }
+
+  /**
+   * Resets the consecutive failures of the server.
+   *
+   * @param serverUrl base url of the jenkins server
+   */
+  void success(String serverUrl) {
+    failures.remove(Urls.withTrailingSlash(serverUrl));
+  }
+
+  /**
+   * Records a failure of the server and returns the delay for the next
+   * attempt.
+   *
+   * @param serverUrl base url of the jenkins server
+   * @return delay before the next attempt
+   */
+  Duration failure(String serverUrl) {
+    int count = failures.computeIfAbsent(Urls.withTrailingSlash(serverUrl), key -> new AtomicInteger()).incrementAndGet();
+    long max = maxDelay.toMillis();
+    long exponential = baseDelay.toMillis() << Math.min(count - 1, 30);
+    long delay = exponential <= 0 || exponential > max ? max : exponential;
+    long half = delay / 2;
+    return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(delay - half + 1));
+  }
+}
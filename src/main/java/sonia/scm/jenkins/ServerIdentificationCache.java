@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.github.legman.Subscribe;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.inject.Inject;
+import sonia.scm.EagerSingleton;
+import sonia.scm.config.ScmConfigurationChangedEvent;
+import sonia.scm.plugin.Extension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the resolved {@link AdditionalServerIdentification}s, so that sending
+ * an event does not read the configuration of other plugins every time. The
+ * identifications are resolved again after a change of the scm configuration
+ * and, because not every plugin announces changes of its configuration, at
+ * the latest after {@link #MAX_AGE}.
+ */
+@Extension
+@EagerSingleton
+public class ServerIdentificationCache {
+
+  static final Duration MAX_AGE = Duration.ofMinutes(1);
+
+  private final Set<AdditionalServerIdentification> serverIdentifications;
+  private final Clock clock;
+
+  private volatile Resolved resolved;
+
+  @Inject
+  public ServerIdentificationCache(Set<AdditionalServerIdentification> serverIdentifications) {
+    this(serverIdentifications, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  ServerIdentificationCache(Set<AdditionalServerIdentification> serverIdentifications, Clock clock) {
+    this.serverIdentifications = serverIdentifications;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the immutable list of identifications of this server.
+   */
+  List<AdditionalServerIdentification.Identification> get() {
+    Instant now = clock.instant();
+    Resolved current = resolved;
+    if (current == null || !now.isBefore(current.expiresAt)) {
+      current = new Resolved(resolve(), now.plus(MAX_AGE));
+      resolved = current;
+    }
+    return current.identifications;
+  }
+
+  private List<AdditionalServerIdentification.Identification> resolve() {
+    return serverIdentifications.stream()
+      .map(AdditionalServerIdentification::get)
+      .collect(Collectors.toUnmodifiableList());
+  }
+
+  @Subscribe(async = false)
+  public void handle(ScmConfigurationChangedEvent event) {
+    resolved = null;
+  }
+
+  private static class Resolved {
+
+    private final List<AdditionalServerIdentification.Identification> identifications;
+    private final Instant expiresAt;
+
+    private Resolved(List<AdditionalServerIdentification.Identification> identifications, Instant expiresAt) {
+      this.identifications = identifications;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.repository.Modifications;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates the list of changed paths, which is sent with the notifyCommit
+ * request of subversion. Every line consists of the action (A, U or D) and the
+ * path, separated by three spaces.
+ * <p>
+ * Jenkins matches the paths against the module locations of its jobs, a path
+ * matches if it is equal to the location or is located below it. If the
+ * number of paths exceeds the limit, they are replaced by their parent
+ * directories: the deepest directory level is used, at which there are not
+ * more distinct directories than the limit. In the worst case this is the
+ * common parent of all paths, but never the root of the repository: paths are
+ * reduced to their top level directories at most, even if there are more of
+ * them than the limit. Jobs with a module location at or above the used level
+ * are still triggered, jobs below are not, so every truncation is logged.
+ */
+final class SvnChangeList {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SvnChangeList.class);
+
+  private static final String SEPARATOR = "   ";
+
+  private SvnChangeList() {
+  }
+
+  /**
+   * Creates the change list.
+   *
+   * @param modifications modifications of the revision
+   * @param limit         maximum number of lines, at least one, zero or less
+   *                      for no limit
+   * @return change list
+   */
+  static String of(Modifications modifications, int limit) {
+    int count = modifications.getAdded().size()
+      + modifications.getCopied().size()
+      + modifications.getModified().size()
+      + modifications.getRenamed().size()
+      + modifications.getRemoved().size();
+
+    if (limit > 0 && count > limit) {
+      Collection<String> directories = truncated(paths(modifications, count), limit);
+      LOG.warn(
+        "revision {} changes {} paths, which exceeds the limit of {}; sending {} parent directories instead, jobs with module locations below them are not triggered",
+        modifications.getRevision(), count, limit, directories.size()
+      );
+      StringBuilder content = new StringBuilder();
+      directories.forEach(directory -> append(content, "U", directory));
+      return content.toString();
+    }
+
+    StringBuilder content = new StringBuilder();
+    modifications.getAdded().forEach(m -> append(content, "A", m.getPath()));
+    modifications.getCopied().forEach(m -> append(content, "A", m.getTargetPath()));
+    modifications.getModified().forEach(m -> append(content, "U", m.getPath()));
+    modifications.getRenamed().forEach(m -> append(content, "U", m.getNewPath()));
+    modifications.getRemoved().forEach(m -> append(content, "D", m.getPath()));
+    return content.toString();
+  }
+
+  private static List<String> paths(Modifications modifications, int count) {
+    List<String> paths = new ArrayList<>(count);
+    modifications.getAdded().forEach(m -> paths.add(m.getPath()));
+    modifications.getCopied().forEach(m -> paths.add(m.getTargetPath()));
+    modifications.getModified().forEach(m -> paths.add(m.getPath()));
+    modifications.getRenamed().forEach(m -> paths.add(m.getNewPath()));
+    modifications.getRemoved().forEach(m -> paths.add(m.getPath()));
+    return paths;
+  }
+
+  private static Collection<String> truncated(List<String> paths, int limit) {
+    // the root of the repository would be sent as empty path, which matches no job
+    int depth = Math.max(commonParentDepth(paths), 1);
+    Collection<String> directories = parents(paths, depth, Integer.MAX_VALUE);
+    while (true) {
+      Collection<String> deeper = parents(paths, ++depth, limit);
+      if (deeper == null || deeper.equals(directories)) {
+        break;
+      }
+      directories = deeper;
+    }
+    return directories;
+  }
+
+  /**
+   * Returns the number of leading directories, which all paths have in common.
+   */
+  private static int commonParentDepth(List<String> paths) {
+    String first = paths.get(0);
+    int common = first.lastIndexOf('/') + 1;
+    for (String path : paths) {
+      common = Math.min(common, path.length());
+      for (int i = 0; i < common; i++) {
+        if (path.charAt(i) != first.charAt(i)) {
+          common = i;
+          break;
+        }
+      }
+    }
+    int depth = 0;
+    for (int i = 0; i < common; i++) {
+      if (first.charAt(i) == '/') {
+        depth++;
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Returns the distinct parents of the paths with at most the given number of
+   * path segments or {@code null} if there are more than {@code max} parents.
+   */
+  private static Collection<String> parents(List<String> paths, int depth, int max) {
+    Set<String> parents = new LinkedHashSet<>();
+    for (String path : paths) {
+      parents.add(parent(path, depth));
+      if (parents.size() > max) {
+        return null;
+      }
+    }
+    return parents;
+  }
+
+  private static String parent(String path, int depth) {
+    int index = -1;
+    for (int i = 0; i < depth; i++) {
+      index = path.indexOf('/', index + 1);
+      if (index < 0) {
+        return path;
+      }
+    }
+    return path.substring(0, index);
+  }
+
+  private static void append(StringBuilder content, String action, String path) {
+    content.append(action).append(SEPARATOR).append(path).append('\n');
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.github.legman.Subscribe;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.inject.Inject;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.plugin.Extension;
+import sonia.scm.repository.ClearRepositoryCacheEvent;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.api.LookupCommandBuilder;
+import sonia.scm.repository.api.RepositoryService;
+
+import java.util.Optional;
+
+/**
+ * Caches the uuids of subversion repositories, which are part of the
+ * notifyCommit url. The uuid of a repository does not change, so the lookup
+ * is only done once per repository. The entry is removed if the repository is
+ * deleted or its content is replaced, e.g. by an import.
+ */
+@Extension
+@EagerSingleton
+public class SvnUuidCache {
+
+  private static final int MAXIMUM_SIZE = 1000;
+
+  private final Cache<String, String> uuids = CacheBuilder.newBuilder()
+    .maximumSize(MAXIMUM_SIZE)
+    .build();
+
+  @Inject
+  public SvnUuidCache() {
+    // used by injection
+  }
+
+  /**
+   * Returns the uuid of the repository. If the uuid is not cached, it is read
+   * with the lookup command of the given service.
+   *
+   * @param repository        subversion repository
+   * @param repositoryService service of the repository
+   * @return uuid or empty if the repository has no uuid
+   */
+  Optional<String> get(Repository repository, RepositoryService repositoryService) {
+    String uuid = uuids.getIfPresent(repository.getId());
+    if (uuid == null) {
+      Optional<String> lookedUp = lookup(repositoryService);
+      lookedUp.ifPresent(value -> uuids.put(repository.getId(), value));
+      return lookedUp;
+    }
+    return Optional.of(uuid);
+  }
+
+  private Optional<String> lookup(RepositoryService repositoryService) {
+    LookupCommandBuilder command = repositoryService.getLookupCommand();
+    return command.lookup(String.class, "propget", "uuid", "/");
+  }
+
+  @Subscribe(async = false)
+  public void handle(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      uuids.invalidate(event.getItem().getId());
+    }
+  }
+
+  @Subscribe(async = false)
+  public void handle(ClearRepositoryCacheEvent event) {
+    uuids.invalidate(event.getRepository().getId());
+  }
+}
@@ -84,4 +84,34 @@ public class Urls {
 
     return url;
   }
+
+  /**
+   * Appends a slash to the url, if it does not end with one.
+   *
+   * @param url url
+   * @return url ending with a slash
+   */
+  static String withTrailingSlash(String url) {
+    return url.endsWith("/") ? url : url.concat("/");
+  }
+
+  /**
+   * Removes user info, query and fragment from the url, because they could
+   * contain credentials or tokens.
+   *
+   * @param url url
+   * @return url without secrets
+   */
+  static String withoutSecrets(String url) {
+    if (url == null) {
+      return null;
+    }
+    try {
+      URI uri = new URI(url);
+      return new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), uri.getPath(), null, null).toString();
+    } catch (URISyntaxException ex) {
+      int query = url.indexOf('?');
+      return query >= 0 ? url.substring(0, query) : url;
+    }
+  }
 }
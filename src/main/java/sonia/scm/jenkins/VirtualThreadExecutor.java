@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Executor which starts a new virtual thread for every task. The number of
+ * tasks in flight is limited, if the limit is reached the
+ * {@link DispatchDropPolicy} decides whether the task is passed to the
+ * caller runs handler or dropped. There is no queue in front of the virtual
+ * threads, so {@link DispatchDropPolicy#DISCARD_OLDEST} drops the new task.
+ * Dropped tasks are passed to the drop handler.
+ * <p>
+ * The plugin is compiled for java 17, so the virtual thread executor is
+ * looked up by reflection and created once to find out whether virtual threads
+ * are enabled. Use {@link #isSupported()} before creating an instance.
+ */
+class VirtualThreadExecutor extends AbstractExecutorService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+  private static final Method FACTORY = lookupFactory();
+
+  private final ExecutorService delegate;
+  private final Semaphore permits;
+  private final DispatchDropPolicy dropPolicy;
+  private final Consumer<Runnable> dropHandler;
+  private final BiConsumer<Runnable, ExecutorService> callerRunsHandler;
+
+  private VirtualThreadExecutor(ExecutorService delegate, int limit, DispatchDropPolicy dropPolicy, Consumer<Runnable> dropHandler, BiConsumer<Runnable, ExecutorService> callerRunsHandler) {
+    this.delegate = delegate;
+    this.permits = new Semaphore(limit);
+    this.dropPolicy = dropPolicy;
+    this.dropHandler = dropHandler;
+    this.callerRunsHandler = callerRunsHandler;
+  }
+
+  static boolean isSupported() {
+    return FACTORY != null;
+  }
+
+  static VirtualThreadExecutor create(int limit, DispatchDropPolicy dropPolicy, Consumer<Runnable> dropHandler, BiConsumer<Runnable, ExecutorService> callerRunsHandler) {
+    if (!isSupported()) {
+      throw new IllegalStateException("virtual threads are not supported by this runtime");
+    }
+    try {
+      return new VirtualThreadExecutor((ExecutorService) FACTORY.invoke(null), limit, dropPolicy, dropHandler, callerRunsHandler);
+    } catch (IllegalAccessException | InvocationTargetException ex) {
+      throw new IllegalStateException("failed to create virtual thread executor", ex);
+    }
+  }
+
+  private static Method lookupFactory() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      // java 19 and 20 have the method, but throw without --enable-preview
+      ((ExecutorService) factory.invoke(null)).shutdown();
+      return factory;
+    } catch (NoSuchMethodException ex) {
+      LOG.debug("virtual threads are not supported by this runtime");
+      return null;
+    } catch (Exception | LinkageError ex) {
+      LOG.debug("virtual threads are not enabled in this runtime", ex);
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (permits.tryAcquire()) {
+      try {
+        delegate.execute(() -> {
+          try {
+            command.run();
+          } finally {
+            permits.release();
+          }
+        });
+      } catch (RejectedExecutionException ex) {
+        permits.release();
+        throw ex;
+      }
+    } else if (dropPolicy == DispatchDropPolicy.CALLER_RUNS) {
+      callerRunsHandler.accept(command, this);
+    } else {
+      LOG.warn("jenkins dispatch limit reached, dropping {}", command);
+      dropHandler.accept(command);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+}
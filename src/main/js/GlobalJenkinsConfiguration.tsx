@@ -20,6 +20,12 @@ import { Notification, Subtitle, Title } from "@scm-manager/ui-core";
 import { ConfigurationForm, Form } from "@scm-manager/ui-forms";
 import { HalRepresentation } from "@scm-manager/ui-types";
 
+type Server = {
+  url: string;
+  username?: string;
+  apiToken?: string;
+};
+
 type GlobalConfiguration = HalRepresentation & {
   url: string;
   disableRepositoryConfiguration: boolean;
@@ -30,8 +36,26 @@ type GlobalConfiguration = HalRepresentation & {
   username?: string;
   apiToken?: string;
   gitAuthenticationToken?: string;
+  additionalServers: Server[];
+  dispatchQueueSize: number;
+  dispatchWorkerCount: number;
+  dispatchDropPolicy: "CALLER_RUNS" | "DISCARD_NEWEST" | "DISCARD_OLDEST";
+  dispatchExecutionMode: "PLATFORM_THREADS" | "VIRTUAL_THREADS";
+  dispatchMaxAttempts: number;
+  dispatchCoalesceWindow: number;
+  crumbCacheTtl: number;
+  navigatorEventQuietPeriod: number;
+  navigatorEventMaxDelay: number;
+  eventBatching: boolean;
+  eventBatchSize: number;
+  eventBatchMaxDelay: number;
+  eventJsonContent: boolean;
+  subversionChangeListLimit: number;
 };
 
+const dropPolicies = ["CALLER_RUNS", "DISCARD_NEWEST", "DISCARD_OLDEST"];
+const executionModes = ["PLATFORM_THREADS", "VIRTUAL_THREADS"];
+
 type Props = {
   link: string;
 };
@@ -63,20 +87,95 @@ export const GlobalJenkinsConfiguration: FC<Props> = ({ link }) => {
         <Form.Row>
           <Form.Checkbox name="disableSubversionTrigger" />
         </Form.Row>
+        <Form.Row>
+          <Form.Input name="subversionChangeListLimit" type="number" />
+        </Form.Row>
         <Form.Row>
           <Form.Checkbox name="disableEventTrigger" />
         </Form.Row>
+        <Form.Row>
+          <Form.Input name="navigatorEventQuietPeriod" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="navigatorEventMaxDelay" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Checkbox name="eventBatching" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="eventBatchSize" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="eventBatchMaxDelay" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Checkbox name="eventJsonContent" />
+        </Form.Row>
         <Form.Row>
           <Form.Input name="username" />
         </Form.Row>
         <Form.Row>
           <Form.Input name="apiToken" type="password" />
         </Form.Row>
+        <Form.ListContext name="additionalServers">
+          <h3 className="subtitle is-5">{t("scm-jenkins-plugin.globalConfig.additionalServers.entity")}</h3>
+          <Form.Table withDelete>
+            <Form.Table.Column name="url" />
+            <Form.Table.Column name="username" />
+          </Form.Table>
+          <Form.AddListEntryForm defaultValues={{ url: "", username: "", apiToken: "" }}>
+            <p className="mb-3">{t("scm-jenkins-plugin.globalConfig.additionalServers.helpText")}</p>
+            <Form.Row>
+              <Form.Input name="url" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="username" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="apiToken" type="password" />
+            </Form.Row>
+          </Form.AddListEntryForm>
+        </Form.ListContext>
         <hr />
         <Subtitle>{t("scm-jenkins-plugin.globalConfig.gitOnlySubtitle")}</Subtitle>
         <Form.Row>
           <Form.Input name="gitAuthenticationToken" type="password" />
         </Form.Row>
+        <hr />
+        <Subtitle>{t("scm-jenkins-plugin.globalConfig.dispatchSubtitle")}</Subtitle>
+        <Form.Row>
+          <Form.Select
+            name="dispatchExecutionMode"
+            options={executionModes.map(value => ({
+              value,
+              label: t(`scm-jenkins-plugin.globalConfig.dispatchExecutionMode.options.${value}`)
+            }))}
+          />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="dispatchQueueSize" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="dispatchWorkerCount" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Select
+            name="dispatchDropPolicy"
+            options={dropPolicies.map(value => ({
+              value,
+              label: t(`scm-jenkins-plugin.globalConfig.dispatchDropPolicy.options.${value}`)
+            }))}
+          />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="dispatchMaxAttempts" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="dispatchCoalesceWindow" type="number" />
+        </Form.Row>
+        <Form.Row>
+          <Form.Input name="crumbCacheTtl" type="number" />
+        </Form.Row>
       </ConfigurationForm>
     </>
   );
@@ -25,6 +25,22 @@ type BuildParameter = {
   value: string;
 };
 
+type Target = {
+  url: string;
+  project: string;
+  token?: string;
+  username?: string;
+  apiToken?: string;
+  csrf: boolean;
+};
+
+type Job = {
+  project: string;
+  token?: string;
+  branches: string[];
+  buildParameters: BuildParameter[];
+};
+
 type RepositoryConfiguration = HalRepresentation & {
   apiToken: string;
   branches: string[];
@@ -34,6 +50,8 @@ type RepositoryConfiguration = HalRepresentation & {
   username: string;
   csrf: boolean;
   buildParameters: BuildParameter[];
+  additionalTargets: Target[];
+  jobs: Job[];
 };
 
 type Props = {
@@ -95,6 +113,54 @@ export const JenkinsRepositoryConfiguration: FC<Props> = ({ link }) => {
             </Form.Row>
           </Form.AddListEntryForm>
         </Form.ListContext>
+        <Form.ListContext name="jobs">
+          <h3 className="subtitle is-5">{t("scm-jenkins-plugin.repoConfig.jobs.entity")}</h3>
+          <Form.Table withDelete>
+            <Form.Table.Column name="project" />
+          </Form.Table>
+          <Form.AddListEntryForm defaultValues={{ project: "", token: "", branches: [], buildParameters: [] }}>
+            <p className="mb-3">{t("scm-jenkins-plugin.repoConfig.jobs.helpText")}</p>
+            <Form.Row>
+              <Form.Input name="project" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="token" type="password" />
+            </Form.Row>
+            <Form.Row>
+              <Form.ChipInput name="branches" />
+            </Form.Row>
+          </Form.AddListEntryForm>
+        </Form.ListContext>
+        <Form.ListContext name="additionalTargets">
+          <h3 className="subtitle is-5">{t("scm-jenkins-plugin.repoConfig.additionalTargets.entity")}</h3>
+          <Form.Table withDelete>
+            <Form.Table.Column name="url" />
+            <Form.Table.Column name="project" />
+          </Form.Table>
+          <Form.AddListEntryForm
+            defaultValues={{ url: "", project: "", token: "", username: "", apiToken: "", csrf: false }}
+          >
+            <p className="mb-3">{t("scm-jenkins-plugin.repoConfig.additionalTargets.helpText")}</p>
+            <Form.Row>
+              <Form.Input name="url" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="project" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="token" type="password" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Checkbox name="csrf" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="username" />
+            </Form.Row>
+            <Form.Row>
+              <Form.Input name="apiToken" type="password" />
+            </Form.Row>
+          </Form.AddListEntryForm>
+        </Form.ListContext>
       </ConfigurationForm>
     </>
   );
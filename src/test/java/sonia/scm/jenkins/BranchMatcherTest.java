@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BranchMatcherTest {
+
+  @Test
+  void shouldBeEmptyWithoutBranches() {
+    assertThat(BranchMatcher.compile(null).isEmpty()).isTrue();
+    assertThat(BranchMatcher.compile(ImmutableSet.of()).isEmpty()).isTrue();
+  }
+
+  @Test
+  void shouldMatchExactNames() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("main", "develop"));
+
+    assertThat(matcher.matches("main")).isTrue();
+    assertThat(matcher.matches("develop")).isTrue();
+    assertThat(matcher.matches("maintenance")).isFalse();
+  }
+
+  @Test
+  void shouldTreatRegexCharactersInNamesLiterally() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("release/1.0*"));
+
+    assertThat(matcher.matches("release/1.0.1")).isTrue();
+    assertThat(matcher.matches("release/100")).isFalse();
+  }
+
+  @Test
+  void shouldMatchGlobs() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("feature/*", "hotfix-?"));
+
+    assertThat(matcher.matches("feature/spaceship")).isTrue();
+    assertThat(matcher.matches("feature/spaceship/engine")).isFalse();
+    assertThat(matcher.matches("hotfix-1")).isTrue();
+    assertThat(matcher.matches("hotfix-42")).isFalse();
+  }
+
+  @Test
+  void shouldMatchDoubleStarAcrossSlashes() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("feature/**"));
+
+    assertThat(matcher.matches("feature/spaceship/engine")).isTrue();
+    assertThat(matcher.matches("bugfix/spaceship")).isFalse();
+  }
+
+  @Test
+  void shouldMatchRegularExpressions() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("regex:release/[0-9]+\\.x", "main"));
+
+    assertThat(matcher.matches("release/2.x")).isTrue();
+    assertThat(matcher.matches("release/next")).isFalse();
+    assertThat(matcher.matches("main")).isTrue();
+  }
+
+  @Test
+  void shouldIgnoreInvalidRegularExpressions() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("regex:release/[", "main"));
+
+    assertThat(matcher.matches("main")).isTrue();
+    assertThat(matcher.matches("release/[")).isFalse();
+  }
+
+  @Test
+  void shouldMatchNothingIfAllRegularExpressionsAreInvalid() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("regex:release/["));
+
+    assertThat(matcher.isEmpty()).isFalse();
+    assertThat(matcher.matches("main")).isFalse();
+    assertThat(matcher.matches("release/[")).isFalse();
+  }
+
+  @Test
+  void shouldKeepBackReferencesOfEveryRegularExpression() {
+    BranchMatcher matcher = BranchMatcher.compile(ImmutableSet.of("regex:(a)\\1", "regex:(b)\\1"));
+
+    assertThat(matcher.matches("aa")).isTrue();
+    assertThat(matcher.matches("bb")).isTrue();
+    assertThat(matcher.matches("ba")).isFalse();
+  }
+}
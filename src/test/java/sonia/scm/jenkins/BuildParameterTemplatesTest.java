@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.cloudogu.scm.el.ElParser;
+import com.cloudogu.scm.el.jexl.JexlParser;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.repository.Person;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class BuildParameterTemplatesTest {
+
+  private static final Map<String, Object> ENV = ImmutableMap.of("author", new Person("trillian"));
+
+  @Spy
+  private ElParser elParser = new JexlParser();
+
+  @Test
+  void shouldReturnLiteralWithoutParsing() {
+    BuildParameterTemplates templates = new BuildParameterTemplates(elParser);
+
+    assertThat(templates.evaluate("trillian @hitchhiker/42", ENV)).isEqualTo("trillian @hitchhiker/42");
+    verify(elParser, never()).parse(anyString());
+  }
+
+  @Test
+  void shouldParseExpressionOnlyOnce() {
+    BuildParameterTemplates templates = new BuildParameterTemplates(elParser);
+
+    assertThat(templates.evaluate("${author.name}", ENV)).isEqualTo("trillian");
+    assertThat(templates.evaluate("${author.name}", ENV)).isEqualTo("trillian");
+
+    verify(elParser, times(1)).parse("${author.name}");
+  }
+
+  @Test
+  void shouldParseExpressionsOfStoredConfiguration() {
+    BuildParameterTemplates templates = new BuildParameterTemplates(elParser);
+    JenkinsConfiguration configuration = new JenkinsConfiguration();
+    configuration.setBuildParameters(ImmutableSet.of(
+      new BuildParameter("author", "${author.name}"),
+      new BuildParameter("version", "42")
+    ));
+
+    templates.warm(configuration);
+    templates.evaluate("${author.name}", ENV);
+
+    assertThat(templates.size()).isEqualTo(1);
+    verify(elParser, times(1)).parse("${author.name}");
+  }
+
+  @Test
+  void shouldParseExpressionsOfJobs() {
+    BuildParameterTemplates templates = new BuildParameterTemplates(elParser);
+    JenkinsConfiguration configuration = new JenkinsConfiguration();
+    configuration.setJobs(List.of(
+      new JenkinsJob("Docs", null, ImmutableSet.of(), ImmutableSet.of(new BuildParameter("author", "job of ${author.name}")))
+    ));
+
+    templates.warm(configuration);
+    templates.evaluate("job of ${author.name}", ENV);
+
+    assertThat(templates.size()).isEqualTo(1);
+    verify(elParser, times(1)).parse("job of ${author.name}");
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.net.ahc.AdvancedHttpRequest;
+import sonia.scm.net.ahc.AdvancedHttpResponse;
+import sonia.scm.store.InMemoryConfigurationStoreFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CsrfCrumbCacheTest {
+
+  private static final String JENKINS_URL = "http://hitchhiker.org/jenkins";
+  private static final String CRUMB_URL = JENKINS_URL + "/crumbIssuer/api/json";
+
+  @Mock
+  private AdvancedHttpClient client;
+  @Mock(answer = Answers.RETURNS_SELF)
+  private AdvancedHttpRequest request;
+  @Mock
+  private AdvancedHttpResponse response;
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+  };
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private JenkinsContext context;
+  private CsrfCrumbCache cache;
+
+  @BeforeEach
+  void setUpCache() throws IOException {
+    JenkinsMetrics metrics = new JenkinsMetrics(registry);
+    context = new JenkinsContext(new InMemoryConfigurationStoreFactory(), metrics);
+    cache = new CsrfCrumbCache(context, metrics, ticker);
+
+    lenient().when(client.get(CRUMB_URL)).thenReturn(request);
+    lenient().when(request.request()).thenReturn(response);
+    lenient().when(response.getStatus()).thenReturn(200);
+    lenient().when(response.contentAsStream()).thenAnswer(invocation -> crumbResponse("abc"));
+  }
+
+  @Test
+  void shouldReuseCrumbWithinTtl() throws IOException {
+    CsrfCrumb first = cache.get(client, JENKINS_URL, "trillian", "secret");
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(CsrfCrumbCache.DEFAULT_TTL - 1));
+    CsrfCrumb second = cache.get(client, JENKINS_URL + "/", "trillian", "secret");
+
+    assertThat(second).isSameAs(first);
+    verify(client, times(1)).get(CRUMB_URL);
+  }
+
+  @Test
+  void shouldFetchNewCrumbAfterTtl() throws IOException {
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(CsrfCrumbCache.DEFAULT_TTL + 1));
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+
+    verify(client, times(2)).get(CRUMB_URL);
+  }
+
+  @Test
+  void shouldFetchNewCrumbAfterInvalidation() throws IOException {
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+    cache.invalidate(JENKINS_URL, "trillian");
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+
+    verify(client, times(2)).get(CRUMB_URL);
+  }
+
+  @Test
+  void shouldCacheCrumbsPerUser() throws IOException {
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+    cache.get(client, JENKINS_URL, "dent", "secret");
+
+    verify(client, times(2)).get(CRUMB_URL);
+  }
+
+  @Test
+  void shouldNotCacheWithoutTtl() throws IOException {
+    GlobalJenkinsConfiguration configuration = new GlobalJenkinsConfiguration();
+    configuration.setCrumbCacheTtl(0);
+    context.storeConfiguration(configuration);
+
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+    cache.get(client, JENKINS_URL, "trillian", "secret");
+
+    verify(client, times(2)).get(CRUMB_URL);
+  }
+
+  @Test
+  void shouldNotCacheFailedFetch() throws IOException {
+    when(response.getStatus()).thenReturn(500, 200);
+
+    assertThat(cache.get(client, JENKINS_URL, "trillian", "secret")).isNull();
+    assertThat(cache.get(client, JENKINS_URL, "trillian", "secret")).isNotNull();
+  }
+
+  @Test
+  void shouldShareInFlightRequest() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(request.request()).thenAnswer(invocation -> {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return response;
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    try {
+      List<CompletableFuture<CsrfCrumb>> results = new ArrayList<>();
+      results.add(CompletableFuture.supplyAsync(this::getUnchecked, executor));
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+      for (int i = 0; i < 5; i++) {
+        results.add(CompletableFuture.supplyAsync(this::getUnchecked, executor));
+      }
+      awaitCollapsedFetches(5);
+      release.countDown();
+
+      CsrfCrumb first = results.get(0).get(5, TimeUnit.SECONDS);
+      for (CompletableFuture<CsrfCrumb> result : results) {
+        assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(first);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(client, times(1)).get(CRUMB_URL);
+    assertThat(registry.get(JenkinsMetrics.CRUMB).timer().count()).isEqualTo(1);
+    assertThat(collapsedFetches()).isEqualTo(5);
+  }
+
+  @Test
+  void shouldReleaseWaitingRequestsIfFetchFailsWithError() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(request.request()).thenAnswer(invocation -> {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      throw new AssertionError("failed to fetch crumb");
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CompletableFuture<CsrfCrumb> first = CompletableFuture.supplyAsync(this::getUnchecked, executor);
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+      CompletableFuture<CsrfCrumb> second = CompletableFuture.supplyAsync(this::getUnchecked, executor);
+      awaitCollapsedFetches(1);
+      release.countDown();
+
+      assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+      assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldFailIfCrumbIssuerIsNotReachable() throws IOException {
+    when(request.request()).thenThrow(new IOException("connection refused")).thenReturn(response);
+
+    assertThrows(IOException.class, () -> cache.get(client, JENKINS_URL, "trillian", "secret"));
+    assertThat(cache.get(client, JENKINS_URL, "trillian", "secret")).isNotNull();
+  }
+
+  private CsrfCrumb getUnchecked() {
+    try {
+      return cache.get(client, JENKINS_URL, "trillian", "secret");
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private void awaitCollapsedFetches(long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (collapsedFetches() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private double collapsedFetches() {
+    Counter counter = registry.find(JenkinsMetrics.CRUMB_COLLAPSED).counter();
+    return counter != null ? counter.count() : 0;
+  }
+
+  private ByteArrayInputStream crumbResponse(String crumb) {
+    String json = "{\"crumb\":\"" + crumb + "\",\"crumbRequestField\":\"Jenkins-Crumb\"}";
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
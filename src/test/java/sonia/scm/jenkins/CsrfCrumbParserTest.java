@@ -30,6 +30,8 @@ public class CsrfCrumbParserTest {
 
   private static final String RESPONSE = "<defaultCrumbIssuer _class='sp'><crumb>abc</crumb><crumbRequestField>Jenkins-Crumb</crumbRequestField></defaultCrumbIssuer>";
 
+  private static final String JSON_RESPONSE = "{\"_class\":\"hudson.security.csrf.DefaultCrumbIssuer\",\"crumb\":\"abc\",\"crumbRequestField\":\"Jenkins-Crumb\"}";
+
   /**
    * Tests {@link CsrfCrumbParser#parse(java.io.InputStream)}.
    * 
@@ -43,6 +45,64 @@ public class CsrfCrumbParserTest {
     assertEquals("Jenkins-Crumb", crumb.getCrumbRequestField());
   }
   
+  /**
+   * Tests {@link CsrfCrumbParser#parse(java.io.InputStream)} with missing fields.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testParseWithoutRequestField() throws IOException
+  {
+    assertNull(CsrfCrumbParser.parse(createInputStreamFromString("<defaultCrumbIssuer><crumb>abc</crumb></defaultCrumbIssuer>")));
+  }
+
+  /**
+   * Tests that {@link CsrfCrumbParser#parse(java.io.InputStream)} does not resolve external entities.
+   */
+  @Test(expected = IOException.class)
+  public void testParseWithDoctype() throws IOException
+  {
+    String xml = "<!DOCTYPE crumb [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]>"
+      + "<defaultCrumbIssuer><crumb>&xxe;</crumb><crumbRequestField>Jenkins-Crumb</crumbRequestField></defaultCrumbIssuer>";
+    CsrfCrumbParser.parse(createInputStreamFromString(xml));
+  }
+
+  /**
+   * Tests {@link CsrfCrumbParser#parseJson(java.io.InputStream)}.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testParseJson() throws IOException
+  {
+    CsrfCrumb crumb = CsrfCrumbParser.parseJson(createInputStreamFromString(JSON_RESPONSE));
+    assertEquals("abc", crumb.getCrumb());
+    assertEquals("Jenkins-Crumb", crumb.getCrumbRequestField());
+  }
+
+  /**
+   * Tests {@link CsrfCrumbParser#parseJson(java.io.InputStream)} with nested unknown fields.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testParseJsonWithNestedFields() throws IOException
+  {
+    String json = "{\"links\":{\"crumb\":\"wrong\"},\"crumbRequestField\":\"Jenkins-Crumb\",\"crumb\":\"abc\"}";
+    CsrfCrumb crumb = CsrfCrumbParser.parseJson(createInputStreamFromString(json));
+    assertEquals("abc", crumb.getCrumb());
+    assertEquals("Jenkins-Crumb", crumb.getCrumbRequestField());
+  }
+
+  /**
+   * Tests {@link CsrfCrumbParser#parseJson(java.io.InputStream)} with an invalid response.
+   */
+  @Test(expected = IOException.class)
+  public void testParseJsonWithInvalidContent() throws IOException
+  {
+    CsrfCrumbParser.parseJson(createInputStreamFromString("crumb"));
+  }
+
   private InputStream createInputStreamFromString(String content) throws IOException
   {
     return new ByteArrayInputStream(content.getBytes("UTF-8"));
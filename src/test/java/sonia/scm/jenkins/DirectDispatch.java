@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.inject.Provider;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.store.InMemoryConfigurationStoreFactory;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Lets a mocked {@link JenkinsDispatcher} send every request synchronously.
+ */
+final class DirectDispatch {
+
+  private DirectDispatch() {
+  }
+
+  static void dispatchDirectly(JenkinsDispatcher dispatcher, Provider<AdvancedHttpClient> httpClientProvider) {
+    JenkinsMetrics metrics = new JenkinsMetrics(new SimpleMeterRegistry());
+    JenkinsContext context = new JenkinsContext(new InMemoryConfigurationStoreFactory(), metrics);
+    JenkinsRequestSender sender = new JenkinsRequestSender(httpClientProvider, new CsrfCrumbCache(context, metrics), new JenkinsCircuitBreaker(), metrics);
+    lenient().doAnswer(invocation -> sender.send(invocation.getArgument(0))).when(dispatcher).dispatch(any());
+  }
+}
@@ -59,7 +59,7 @@ class JenkinsBranchAndTagEventRelayTest {
   void shouldNotSend() {
     eventRelay.handle(new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE)));
 
-    verify(jenkinsEventRelay, never()).send(any(), any());
+    verify(jenkinsEventRelay, never()).send(any(PostReceiveRepositoryHookEvent.class), any());
   }
 
   @Test
@@ -68,9 +68,10 @@ class JenkinsBranchAndTagEventRelayTest {
     when(hookContext.getBranchProvider().getCreatedOrModified()).thenReturn(ImmutableList.of("master"));
     when(hookContext.getBranchProvider().getDeletedOrClosed()).thenReturn(ImmutableList.of("develop"));
 
-    eventRelay.handle(new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE)));
+    PostReceiveRepositoryHookEvent event = new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE));
+    eventRelay.handle(event);
 
-    verify(jenkinsEventRelay).send(eq(REPOSITORY), argThat(dto -> {
+    verify(jenkinsEventRelay).send(eq(event), argThat(dto -> {
       assertThat(dto).extracting("createdOrModifiedBranches").asList().extracting("name").containsExactly("master");
       assertThat(dto).extracting("deletedBranches").asList().extracting("name").containsExactly("develop");
       return true;
@@ -84,9 +85,10 @@ class JenkinsBranchAndTagEventRelayTest {
     when(hookContext.getTagProvider().getCreatedTags()).thenReturn(ImmutableList.of(new Tag("snapshot", "1")));
     when(hookContext.getTagProvider().getDeletedTags()).thenReturn(ImmutableList.of(new Tag("release", "2")));
 
-    eventRelay.handle(new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE)));
+    PostReceiveRepositoryHookEvent event = new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE));
+    eventRelay.handle(event);
 
-    verify(jenkinsEventRelay).send(eq(REPOSITORY), argThat(dto -> {
+    verify(jenkinsEventRelay).send(eq(event), argThat(dto -> {
       assertThat(dto).extracting("createOrModifiedTags").asList().extracting("name").containsExactly("snapshot");
       assertThat(dto).extracting("deletedTags").asList().extracting("name").containsExactly("release");
       return true;
@@ -102,9 +104,10 @@ class JenkinsBranchAndTagEventRelayTest {
     when(hookContext.getBranchProvider().getCreatedOrModified()).thenReturn(ImmutableList.of("master"));
     when(hookContext.getBranchProvider().getDeletedOrClosed()).thenReturn(ImmutableList.of("develop"));
 
-    eventRelay.handle(new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE)));
+    PostReceiveRepositoryHookEvent event = new PostReceiveRepositoryHookEvent(new RepositoryHookEvent(hookContext, REPOSITORY, RepositoryHookType.POST_RECEIVE));
+    eventRelay.handle(event);
 
-    verify(jenkinsEventRelay).send(eq(REPOSITORY), argThat(dto -> {
+    verify(jenkinsEventRelay).send(eq(event), argThat(dto -> {
       assertThat(dto).extracting("createOrModifiedTags").asList().extracting("name").containsExactly("snapshot");
       assertThat(dto).extracting("deletedTags").asList().extracting("name").containsExactly("release");
       assertThat(dto).extracting("createdOrModifiedBranches").asList().extracting("name").containsExactly("master");
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JenkinsCircuitBreakerTest {
+
+  private static final String SERVER = "http://hitchhiker.org/jenkins";
+
+  private final MutableClock clock = new MutableClock();
+  private final JenkinsCircuitBreaker breaker = new JenkinsCircuitBreaker(clock);
+
+  @Test
+  void shouldStayClosedBelowThreshold() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD - 1);
+
+    breaker.acquire(SERVER);
+
+    assertThat(breaker.getStates()).singleElement()
+      .extracting(JenkinsCircuitBreaker.CircuitState::getState)
+      .isEqualTo(JenkinsCircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void shouldResetFailuresOnSuccess() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD - 1);
+    breaker.success(SERVER);
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD - 1);
+
+    breaker.acquire(SERVER);
+  }
+
+  @Test
+  void shouldOpenAfterThreshold() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+
+    assertThrows(CircuitOpenException.class, () -> breaker.acquire(SERVER));
+    assertThat(breaker.getStates()).singleElement()
+      .satisfies(state -> {
+        assertThat(state.getState()).isEqualTo(JenkinsCircuitBreaker.State.OPEN);
+        assertThat(state.getConsecutiveFailures()).isEqualTo(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+        assertThat(state.getOpenedAt()).isEqualTo(clock.instant());
+      });
+  }
+
+  @Test
+  void shouldTellWhenTheCircuitCouldBeTriedAgain() {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+    clock.advance(Duration.ofSeconds(10));
+
+    CircuitOpenException exception = assertThrows(CircuitOpenException.class, () -> breaker.acquire(SERVER));
+
+    assertThat(exception.getRetryAfter()).isEqualTo(JenkinsCircuitBreaker.OPEN_DURATION.minusSeconds(10));
+  }
+
+  @Test
+  void shouldLetSingleProbeThroughAfterOpenDuration() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+    clock.advance(JenkinsCircuitBreaker.OPEN_DURATION);
+
+    breaker.acquire(SERVER);
+
+    CircuitOpenException exception = assertThrows(CircuitOpenException.class, () -> breaker.acquire(SERVER));
+    assertThat(exception.getRetryAfter()).isEqualTo(JenkinsCircuitBreaker.PROBE_WAIT);
+  }
+
+  @Test
+  void shouldCloseIfProbeSucceeds() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+    clock.advance(JenkinsCircuitBreaker.OPEN_DURATION);
+    breaker.acquire(SERVER);
+
+    breaker.success(SERVER);
+
+    breaker.acquire(SERVER);
+    breaker.acquire(SERVER);
+  }
+
+  @Test
+  void shouldOpenAgainIfProbeFails() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+    clock.advance(JenkinsCircuitBreaker.OPEN_DURATION);
+    breaker.acquire(SERVER);
+
+    breaker.failure(SERVER);
+
+    assertThrows(CircuitOpenException.class, () -> breaker.acquire(SERVER));
+  }
+
+  @Test
+  void shouldTrackServersSeparately() throws CircuitOpenException {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+
+    breaker.acquire("http://vogon.org/jenkins");
+
+    assertThat(breaker.getStates())
+      .extracting(JenkinsCircuitBreaker.CircuitState::getServerUrl)
+      .containsExactly("http://hitchhiker.org/jenkins/", "http://vogon.org/jenkins/");
+  }
+
+  @Test
+  void shouldIgnoreTrailingSlash() {
+    fail(JenkinsCircuitBreaker.FAILURE_THRESHOLD);
+
+    assertThrows(CircuitOpenException.class, () -> breaker.acquire(SERVER + "/"));
+  }
+
+  private void fail(int times) {
+    for (int i = 0; i < times; i++) {
+      breaker.failure(SERVER);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryTestData;
 
 import java.net.URI;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.lenient;
@@ -135,6 +136,45 @@ class JenkinsConfigurationMapperTest {
     assertThat(configuration.getToken()).isEqualTo(oldConfig.getToken());
   }
 
+  @Test
+  void shouldReplaceAndRestoreSecretsOfAdditionalTargetsAndJobs() {
+    JenkinsConfiguration oldConfig = createConfiguration();
+    oldConfig.setAdditionalTargets(List.of(new JenkinsTarget("http://security.jenkins.io", "scan", "SCAN_TOKEN", "marvin", "SCAN_API_TOKEN", true)));
+    oldConfig.setJobs(List.of(new JenkinsJob("docs", "DOCS_TOKEN", ImmutableSet.of("main"), ImmutableSet.of())));
+
+    JenkinsConfigurationDto dto = mapper.map(oldConfig, REPOSITORY);
+    JenkinsTargetDto targetDto = dto.getAdditionalTargets().get(0);
+    assertThat(targetDto.getToken()).isEqualTo(DUMMY_SECRET);
+    assertThat(targetDto.getApiToken()).isEqualTo(DUMMY_SECRET);
+    assertThat(dto.getJobs().get(0).getToken()).isEqualTo(DUMMY_SECRET);
+
+    JenkinsConfiguration configuration = mapper.map(dto, oldConfig);
+    JenkinsTarget target = configuration.getAdditionalTargets().get(0);
+    assertThat(target.getToken()).isEqualTo("SCAN_TOKEN");
+    assertThat(target.getApiToken()).isEqualTo("SCAN_API_TOKEN");
+    assertThat(target.getUsername()).isEqualTo("marvin");
+    assertThat(configuration.getJobs().get(0).getToken()).isEqualTo("DOCS_TOKEN");
+    assertThat(configuration.getJobs().get(0).getBranches()).containsExactly("main");
+  }
+
+  @Test
+  void shouldRestoreTokensOfJobsForTheSameProject() {
+    JenkinsConfiguration oldConfig = createConfiguration();
+    oldConfig.setJobs(List.of(
+      new JenkinsJob("docs", "MAIN_TOKEN", ImmutableSet.of("main"), ImmutableSet.of()),
+      new JenkinsJob("deploy", "DEPLOY_TOKEN", ImmutableSet.of(), ImmutableSet.of()),
+      new JenkinsJob("docs", "RELEASE_TOKEN", ImmutableSet.of("release/*"), ImmutableSet.of())
+    ));
+
+    JenkinsConfigurationDto dto = mapper.map(oldConfig, REPOSITORY);
+    dto.getJobs().remove(1);
+    JenkinsConfiguration configuration = mapper.map(dto, oldConfig);
+
+    assertThat(configuration.getJobs())
+      .extracting(JenkinsJob::getToken)
+      .containsExactly("MAIN_TOKEN", "RELEASE_TOKEN");
+  }
+
   private JenkinsConfiguration createConfiguration() {
     JenkinsConfiguration configuration = new JenkinsConfiguration();
     configuration.setApiToken("API_TOKEN");
@@ -16,13 +16,21 @@
 
 package sonia.scm.jenkins;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import sonia.scm.HandlerEventType;
+import sonia.scm.repository.PostReceiveRepositoryHookEvent;
 import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryHookEvent;
+import sonia.scm.repository.RepositoryHookType;
 import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.store.ConfigurationStoreFactory;
 import sonia.scm.store.InMemoryConfigurationStoreFactory;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -31,11 +39,12 @@ import static org.junit.jupiter.api.Assertions.*;
 class JenkinsContextTest {
 
   public static final Repository HEART_OF_GOLD = RepositoryTestData.createHeartOfGold();
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
   private JenkinsContext context;
 
   @BeforeEach
   void setUpJenkinsContext() {
-    context = new JenkinsContext(new InMemoryConfigurationStoreFactory());
+    context = new JenkinsContext(new InMemoryConfigurationStoreFactory(), new JenkinsMetrics(registry));
   }
 
   @Test
@@ -93,6 +102,108 @@ class JenkinsContextTest {
     assertThat(serverUrl).isEmpty();
   }
 
+  @Test
+  void shouldReadGlobalConfigurationOnlyOnce() {
+    context.getConfiguration();
+    context.getConfiguration();
+    context.getConfiguration();
+
+    assertThat(cacheCount("miss")).isEqualTo(1);
+    assertThat(cacheCount("hit")).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReturnStoredGlobalConfigurationWithoutReading() {
+    setGlobalUrl("https://hitchhiker.com/global");
+
+    assertThat(context.getConfiguration().getUrl()).isEqualTo("https://hitchhiker.com/global");
+    assertThat(cacheCount("miss")).isZero();
+  }
+
+  @Test
+  void shouldReadRepositoryConfigurationOnlyOnce() {
+    context.getConfiguration(HEART_OF_GOLD);
+    context.getConfiguration(HEART_OF_GOLD);
+
+    assertThat(cacheCount("miss")).isEqualTo(1);
+    assertThat(cacheCount("hit")).isEqualTo(1);
+  }
+
+  @Test
+  void shouldReadRepositoryConfigurationFromStoreAfterInvalidation() {
+    setRepositoryUrl("https://hitchhiker.com/repo");
+
+    context.invalidate(HEART_OF_GOLD.getId());
+
+    assertThat(context.getConfiguration(HEART_OF_GOLD).getUrl()).isEqualTo("https://hitchhiker.com/repo");
+    assertThat(cacheCount("miss")).isEqualTo(1);
+  }
+
+  @Test
+  void shouldInvalidateConfigurationOfDeletedRepository() {
+    setRepositoryUrl("https://hitchhiker.com/repo");
+    JenkinsConfigurationCacheInvalidator invalidator = new JenkinsConfigurationCacheInvalidator(context);
+
+    invalidator.handle(new RepositoryEvent(HandlerEventType.DELETE, HEART_OF_GOLD));
+    context.getConfiguration(HEART_OF_GOLD);
+
+    assertThat(cacheCount("miss")).isEqualTo(1);
+  }
+
+  @Test
+  void shouldKeepConfigurationOfModifiedRepository() {
+    setRepositoryUrl("https://hitchhiker.com/repo");
+    JenkinsConfigurationCacheInvalidator invalidator = new JenkinsConfigurationCacheInvalidator(context);
+
+    invalidator.handle(new RepositoryEvent(HandlerEventType.MODIFY, HEART_OF_GOLD));
+    context.getConfiguration(HEART_OF_GOLD);
+
+    assertThat(cacheCount("miss")).isZero();
+  }
+
+  @Test
+  void shouldShareSnapshotOfEvent() {
+    setRepositoryUrl("https://hitchhiker.com/repo");
+    PostReceiveRepositoryHookEvent event = new PostReceiveRepositoryHookEvent(
+      new RepositoryHookEvent(null, HEART_OF_GOLD, RepositoryHookType.POST_RECEIVE)
+    );
+
+    JenkinsConfigurationSnapshot snapshot = context.snapshot(event);
+    setRepositoryUrl("https://hitchhiker.com/changed");
+
+    assertThat(context.snapshot(event)).isSameAs(snapshot);
+    assertThat(snapshot.getServerUrl()).contains("https://hitchhiker.com/repo");
+  }
+
+  @Test
+  void shouldNotContainRepositoryConfigurationIfDisabled() {
+    setRepositoryUrl("https://hitchhiker.com/repo");
+    setGlobalUrl("https://hitchhiker.com/global", true);
+
+    JenkinsConfigurationSnapshot snapshot = context.snapshot(HEART_OF_GOLD);
+
+    assertThat(snapshot.getRepositoryConfiguration()).isEmpty();
+    assertThat(snapshot.getServerUrl()).contains("https://hitchhiker.com/global");
+  }
+
+  @Test
+  void shouldReturnUrlsOfAllServers() {
+    GlobalJenkinsConfiguration globalConfiguration = new GlobalJenkinsConfiguration();
+    globalConfiguration.setUrl("https://hitchhiker.com/global");
+    globalConfiguration.setAdditionalServers(List.of(
+      new JenkinsServer("https://hitchhiker.com/security", null, null),
+      new JenkinsServer("https://hitchhiker.com/global", null, null)
+    ));
+    JenkinsConfiguration repositoryConfiguration = new JenkinsConfiguration();
+    repositoryConfiguration.setUrl("https://hitchhiker.com/repo");
+    repositoryConfiguration.setAdditionalTargets(List.of(new JenkinsTarget("https://hitchhiker.com/team", "HeartOfGold", null, null, null, false)));
+
+    assertThat(new JenkinsConfigurationSnapshot(globalConfiguration, null).getServerUrls())
+      .containsExactly("https://hitchhiker.com/global", "https://hitchhiker.com/security");
+    assertThat(new JenkinsConfigurationSnapshot(globalConfiguration, repositoryConfiguration).getServerUrls())
+      .containsExactly("https://hitchhiker.com/repo", "https://hitchhiker.com/team");
+  }
+
   private void setGlobalUrl(String url) {
     setGlobalUrl(url, false);
   }
@@ -104,8 +215,15 @@ class JenkinsContextTest {
     context.storeConfiguration(configuration);
   }
 
+  private double cacheCount(String result) {
+    return registry.find(JenkinsMetrics.CONFIG_CACHE).tag(JenkinsMetrics.TAG_RESULT, result).counters()
+      .stream()
+      .mapToDouble(Counter::count)
+      .sum();
+  }
+
   private void setRepositoryUrl(String url) {
-    JenkinsConfiguration configuration = context.getConfiguration(HEART_OF_GOLD);
+    JenkinsConfiguration configuration = new JenkinsConfiguration();
     configuration.setUrl(url);
     context.storeConfiguration(configuration, HEART_OF_GOLD);
   }
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JenkinsDispatcherTest {
+
+  @Mock
+  private JenkinsContext context;
+  @Mock
+  private JenkinsRequestSender sender;
+  @Mock
+  private JenkinsOutbox outbox;
+
+  private final GlobalJenkinsConfiguration configuration = new GlobalJenkinsConfiguration();
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final DeliveryHistory history = new DeliveryHistory();
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private JenkinsDispatcher dispatcher;
+
+  @BeforeEach
+  void setUpDispatcher() {
+    when(context.getConfiguration()).thenReturn(configuration);
+    dispatcher = new JenkinsDispatcher(context, sender, outbox, new JenkinsMetrics(registry), history, new RetryPolicy(Duration.ofMillis(1), Duration.ofMillis(10)));
+  }
+
+  @AfterEach
+  void shutdownDispatcher() {
+    release.countDown();
+    dispatcher.contextDestroyed(null);
+  }
+
+  @Test
+  void shouldSendRequestInBackground() throws IOException {
+    JenkinsRequest request = request("first");
+
+    dispatcher.dispatch(request);
+
+    verify(sender, timeout(1000)).send(request);
+  }
+
+  @Test
+  void shouldSendRequestWithVirtualThreadsOrFallback() throws IOException {
+    configuration.setDispatchExecutionMode(DispatchExecutionMode.VIRTUAL_THREADS);
+    JenkinsRequest request = request("virtual");
+
+    dispatcher.dispatch(request);
+
+    verify(sender, timeout(1000)).send(request);
+  }
+
+  @Test
+  void shouldDropNewestRequestIfQueueIsFull() throws IOException {
+    configureQueue(DispatchDropPolicy.DISCARD_NEWEST);
+    blockSender();
+
+    JenkinsRequest first = request("first");
+    JenkinsRequest second = request("second");
+    JenkinsRequest third = request("third");
+    when(outbox.append(any())).thenReturn(1L, 2L, 3L);
+    dispatcher.dispatch(first);
+    dispatcher.dispatch(second);
+    dispatcher.dispatch(third);
+    release.countDown();
+
+    verify(sender, timeout(1000)).send(first);
+    verify(sender, timeout(1000)).send(second);
+    verify(sender, never()).send(third);
+    verify(outbox).acknowledge(3L);
+    assertThat(registry.get(JenkinsMetrics.DELIVERY_FAILURES).counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldDropOldestRequestIfQueueIsFull() throws IOException {
+    configureQueue(DispatchDropPolicy.DISCARD_OLDEST);
+    blockSender();
+
+    JenkinsRequest first = request("first");
+    JenkinsRequest second = request("second");
+    JenkinsRequest third = request("third");
+    when(outbox.append(any())).thenReturn(1L, 2L, 3L);
+    dispatcher.dispatch(first);
+    dispatcher.dispatch(second);
+    dispatcher.dispatch(third);
+    release.countDown();
+
+    verify(sender, timeout(1000)).send(first);
+    verify(sender, timeout(1000)).send(third);
+    verify(sender, never()).send(second);
+    verify(outbox).acknowledge(2L);
+    assertThat(registry.get(JenkinsMetrics.DELIVERY_FAILURES).counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldSendInCallerThreadIfQueueIsFull() throws IOException, InterruptedException {
+    configureQueue(DispatchDropPolicy.CALLER_RUNS);
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicReference<Thread> thirdThread = new AtomicReference<>();
+    JenkinsRequest first = request("first");
+    JenkinsRequest third = request("third");
+    doAnswer(invocation -> {
+      JenkinsRequest request = invocation.getArgument(0);
+      if (request == first) {
+        started.countDown();
+        release.await(1, TimeUnit.SECONDS);
+      } else if (request == third) {
+        thirdThread.set(Thread.currentThread());
+      }
+      return 200;
+    }).when(sender).send(any());
+
+    dispatcher.dispatch(first);
+    assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+    dispatcher.dispatch(request("second"));
+    dispatcher.dispatch(third);
+
+    assertThat(thirdThread.get()).isSameAs(Thread.currentThread());
+  }
+
+  @Test
+  void shouldNotSendOnSchedulerThreadIfQueueIsFull() throws IOException, InterruptedException {
+    configureQueue(DispatchDropPolicy.CALLER_RUNS);
+    configuration.setDispatchCoalesceWindow(1);
+    CountDownLatch started = new CountDownLatch(1);
+    List<String> threads = new CopyOnWriteArrayList<>();
+    JenkinsRequest blocking = request("blocking");
+    JenkinsRequest coalescable = coalescableRequest("coalescable");
+    doAnswer(invocation -> {
+      JenkinsRequest request = invocation.getArgument(0);
+      if (request == blocking) {
+        started.countDown();
+        release.await(5, TimeUnit.SECONDS);
+      } else if (request == coalescable) {
+        threads.add(Thread.currentThread().getName());
+      }
+      return 200;
+    }).when(sender).send(any());
+
+    dispatcher.dispatch(blocking);
+    assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+    dispatcher.dispatch(request("queued"));
+    dispatcher.dispatch(coalescable);
+    dispatcher.dispatch(coalescable);
+
+    verify(sender, after(1500).times(1)).send(coalescable);
+    release.countDown();
+
+    verify(sender, timeout(3000).times(2)).send(coalescable);
+    assertThat(threads).noneMatch(name -> name.startsWith("JenkinsDispatcherScheduler"));
+  }
+
+  @Test
+  void shouldNotSendInCallerThreadAfterShutdown() throws IOException {
+    configureQueue(DispatchDropPolicy.CALLER_RUNS);
+    JenkinsRequest first = request("first");
+    JenkinsRequest second = request("second");
+    when(sender.send(first)).thenReturn(200);
+    dispatcher.dispatch(first);
+    verify(sender, timeout(1000)).send(first);
+
+    dispatcher.contextDestroyed(null);
+    dispatcher.dispatch(second);
+
+    verify(sender, never()).send(second);
+  }
+
+  @Test
+  void shouldAcknowledgeDeliveredRequest() throws IOException {
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenReturn(42L);
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+  }
+
+  @Test
+  void shouldSendWithoutOutboxIfAppendFails() throws IOException {
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenThrow(new UncheckedIOException(new IOException("read-only file system")));
+    when(sender.send(request)).thenReturn(200);
+
+    dispatcher.dispatch(request);
+
+    verify(sender, timeout(1000)).send(request);
+    verify(outbox, never()).acknowledge(anyLong());
+  }
+
+  @Test
+  void shouldRetryIfJenkinsIsNotReachable() throws IOException {
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenThrow(new ConnectException("connection refused")).thenReturn(200);
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    verify(sender, times(2)).send(request);
+  }
+
+  @Test
+  void shouldRetryTemporaryFailure() throws IOException {
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenReturn(503, 502, 200);
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    verify(sender, times(3)).send(request);
+    assertThat(registry.find(JenkinsMetrics.DELIVERY_FAILURES).counter()).isNull();
+    assertThat(registry.get(JenkinsMetrics.QUEUE_WAIT).timer().count()).isEqualTo(3);
+  }
+
+  @Test
+  void shouldRecordEveryAttemptInHistory() throws IOException {
+    configuration.setDispatchMaxAttempts(2);
+    JenkinsRequest request = JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/HeartOfGold/build?token=secret")
+      .repositoryId("42")
+      .repository("hitchhiker/HeartOfGold")
+      .build();
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenReturn(503, 200);
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    assertThat(history.getDeliveries("42"))
+      .extracting(DeliveryHistory.Delivery::getStatusCode, DeliveryHistory.Delivery::getRetries)
+      .containsExactly(tuple(200, 1), tuple(503, 0));
+    assertThat(history.getDeliveries().get(0).getUrl()).isEqualTo("http://hitchhiker.org/jenkins/job/HeartOfGold/build");
+  }
+
+  @Test
+  void shouldNotCountOpenCircuitAsAttempt() throws IOException {
+    configuration.setDispatchMaxAttempts(2);
+    JenkinsRequest request = request("first");
+    CircuitOpenException circuitOpen = new CircuitOpenException(request.getServerUrl(), Duration.ofMillis(1));
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenThrow(circuitOpen, circuitOpen, circuitOpen).thenReturn(200);
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    verify(sender, times(4)).send(request);
+    assertThat(registry.find(JenkinsMetrics.DELIVERY_FAILURES).counter()).isNull();
+  }
+
+  @Test
+  void shouldNotRetryPermanentFailure() throws IOException {
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenReturn(404);
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    verify(sender, times(1)).send(request);
+  }
+
+  @Test
+  void shouldNotRetryUnknownHost() throws IOException {
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenThrow(new UnknownHostException("hitchhiker.org"));
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    verify(sender, times(1)).send(request);
+    assertThat(registry.get(JenkinsMetrics.DELIVERY_FAILURES).counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldGiveUpAfterMaxAttempts() throws IOException {
+    configuration.setDispatchMaxAttempts(3);
+    JenkinsRequest request = request("first");
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenThrow(new SocketException("connection reset"));
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    verify(sender, times(3)).send(request);
+    assertThat(registry.get(JenkinsMetrics.DELIVERY_FAILURES).tag(JenkinsMetrics.TAG_TYPE, "repository").counter().count()).isEqualTo(1);
+    assertThat(registry.get(JenkinsMetrics.QUEUE_WAIT).timer().count()).isEqualTo(3);
+  }
+
+  @Test
+  void shouldNotRecordExceptionMessagesInHistory() throws IOException {
+    configuration.setDispatchMaxAttempts(1);
+    JenkinsRequest request = JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/HeartOfGold/build?token=secret")
+      .repositoryId("42")
+      .build();
+    when(outbox.append(request)).thenReturn(42L);
+    when(sender.send(request)).thenThrow(new IOException("failed to connect to " + request.getUrl()));
+
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(42L);
+    assertThat(history.getDeliveries("42"))
+      .extracting(DeliveryHistory.Delivery::getError)
+      .containsExactly("java.io.IOException");
+  }
+
+  @Test
+  void shouldReplayPendingRequestsOnStartup() throws IOException {
+    JenkinsRequest request = request("pending");
+    when(outbox.pending()).thenReturn(Collections.singletonList(new JenkinsOutbox.Entry(21L, Instant.now(), request)));
+
+    dispatcher.contextInitialized(null);
+
+    verify(sender, timeout(1000)).send(request);
+    verify(outbox, timeout(1000)).acknowledge(21L);
+  }
+
+  @Test
+  void shouldCoalesceRepeatedTriggers() throws IOException {
+    configuration.setDispatchCoalesceWindow(1);
+    JenkinsRequest request = coalescableRequest("first");
+    when(outbox.append(request)).thenReturn(1L, 2L, 3L);
+
+    dispatcher.dispatch(request);
+    dispatcher.dispatch(request);
+    dispatcher.dispatch(request);
+
+    verify(outbox, timeout(1000)).acknowledge(2L);
+    verify(outbox, timeout(3000)).acknowledge(3L);
+    verify(sender, times(2)).send(request);
+  }
+
+  @Test
+  void shouldNotCoalesceWithoutWindow() throws IOException {
+    JenkinsRequest request = coalescableRequest("first");
+
+    dispatcher.dispatch(request);
+    dispatcher.dispatch(request);
+
+    verify(sender, timeout(1000).times(2)).send(request);
+  }
+
+  private void configureQueue(DispatchDropPolicy dropPolicy) {
+    configuration.setDispatchQueueSize(1);
+    configuration.setDispatchWorkerCount(1);
+    configuration.setDispatchDropPolicy(dropPolicy);
+  }
+
+  private void blockSender() throws IOException {
+    doAnswer(invocation -> {
+      release.await(1, TimeUnit.SECONDS);
+      return 200;
+    }).when(sender).send(any());
+  }
+
+  private JenkinsRequest request(String name) {
+    return JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/" + name + "/build")
+      .build();
+  }
+
+  private JenkinsRequest coalescableRequest(String name) {
+    return JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/" + name + "/build")
+      .coalescable(true)
+      .build();
+  }
+}
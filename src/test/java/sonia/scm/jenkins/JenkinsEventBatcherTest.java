@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JenkinsEventBatcherTest {
+
+  private static final String SERVER = "http://hitchhiker.org/jenkins";
+
+  @Mock
+  private JenkinsContext context;
+  @Mock
+  private JenkinsDispatcher dispatcher;
+  @Mock
+  private JenkinsEventCapabilities capabilities;
+  @Mock
+  private ScheduledExecutorService scheduler;
+
+  private final GlobalJenkinsConfiguration configuration = new GlobalJenkinsConfiguration();
+
+  private JenkinsEventBatcher batcher;
+
+  @BeforeEach
+  void setUpBatcher() {
+    when(context.getConfiguration()).thenReturn(configuration);
+    configuration.setEventBatchSize(3);
+    configuration.setEventBatchMaxDelay(500);
+    batcher = new JenkinsEventBatcher(context, dispatcher, capabilities, scheduler);
+  }
+
+  @Test
+  void shouldSendBatchAfterMaxDelay() {
+    when(capabilities.isBatchSupported(SERVER)).thenReturn(true);
+
+    batcher.add(SERVER, "{\"id\":1}");
+    batcher.add(SERVER, "{\"id\":2}");
+
+    verify(dispatcher, never()).dispatch(any());
+    verify(scheduler).schedule(any(Runnable.class), eq(500L), eq(TimeUnit.MILLISECONDS));
+
+    runScheduledTasks();
+
+    List<JenkinsRequest> requests = dispatchedRequests(1);
+    assertThat(requests.get(0).getUrl()).isEqualTo(SERVER + "/" + JenkinsEventBatcher.BATCH_ENDPOINT);
+    assertThat(requests.get(0).getFormFields()).containsEntry("json", "[{\"id\":1},{\"id\":2}]");
+  }
+
+  @Test
+  void shouldSendBatchWhenFull() {
+    when(capabilities.isBatchSupported(SERVER)).thenReturn(true);
+
+    batcher.add(SERVER, "1");
+    batcher.add(SERVER, "2");
+    batcher.add(SERVER, "3");
+
+    verify(scheduler).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+
+    runScheduledTasks();
+
+    List<JenkinsRequest> requests = dispatchedRequests(1);
+    assertThat(requests.get(0).getFormFields()).containsEntry("json", "[1,2,3]");
+  }
+
+  @Test
+  void shouldStartNewBatchAfterFullBatch() {
+    when(capabilities.isBatchSupported(SERVER)).thenReturn(true);
+
+    batcher.add(SERVER, "1");
+    batcher.add(SERVER, "2");
+    batcher.add(SERVER, "3");
+    batcher.add(SERVER, "4");
+    batcher.add(SERVER, "5");
+
+    runScheduledTasks();
+
+    List<JenkinsRequest> requests = dispatchedRequests(2);
+    assertThat(requests).extracting(request -> request.getFormFields().get("json"))
+      .containsExactlyInAnyOrder("[1,2,3]", "[4,5]");
+  }
+
+  @Test
+  void shouldSendSingleEventsIfBatchIsNotSupported() {
+    when(capabilities.isBatchSupported(SERVER)).thenReturn(false);
+
+    batcher.add(SERVER, "1");
+    batcher.add(SERVER, "2");
+    runScheduledTasks();
+
+    List<JenkinsRequest> requests = dispatchedRequests(2);
+    assertThat(requests).extracting(JenkinsRequest::getUrl)
+      .containsOnly(SERVER + "/" + JenkinsEventRelay.EVENT_ENDPOINT);
+    assertThat(requests).extracting(request -> request.getFormFields().get("json"))
+      .containsExactly("1", "2");
+  }
+
+  @Test
+  void shouldSendBatchAsJsonBody() {
+    configuration.setEventJsonContent(true);
+    when(capabilities.isBatchSupported(SERVER)).thenReturn(true);
+
+    batcher.add(SERVER, "1");
+    batcher.add(SERVER, "2");
+    runScheduledTasks();
+
+    JenkinsRequest request = dispatchedRequests(1).get(0);
+    assertThat(request.getContentType()).isEqualTo("application/json");
+    assertThat(request.getContent()).isEqualTo("[1,2]");
+    assertThat(request.getFormFields()).isEmpty();
+  }
+
+  @Test
+  void shouldNotProbeForSingleEvent() {
+    batcher.add(SERVER, "1");
+    runScheduledTasks();
+
+    assertThat(dispatchedRequests(1).get(0).getUrl()).isEqualTo(SERVER + "/" + JenkinsEventRelay.EVENT_ENDPOINT);
+    verify(capabilities, never()).isBatchSupported(anyString());
+  }
+
+  @Test
+  void shouldCollectEventsPerServer() {
+    batcher.add(SERVER, "1");
+    batcher.add("http://vogon.org/jenkins", "2");
+    runScheduledTasks();
+
+    assertThat(dispatchedRequests(2)).extracting(JenkinsRequest::getServerUrl)
+      .containsExactlyInAnyOrder(SERVER, "http://vogon.org/jenkins");
+  }
+
+  @Test
+  void shouldSendCollectedEventsOnShutdown() {
+    when(capabilities.isBatchSupported(SERVER)).thenReturn(true);
+
+    batcher.add(SERVER, "1");
+    batcher.add(SERVER, "2");
+    batcher.contextDestroyed(null);
+
+    verify(scheduler).shutdownNow();
+    assertThat(dispatchedRequests(1).get(0).getUrl()).isEqualTo(SERVER + "/" + JenkinsEventBatcher.BATCH_ENDPOINT);
+  }
+
+  private void runScheduledTasks() {
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler, atLeastOnce()).schedule(captor.capture(), anyLong(), any());
+    captor.getAllValues().forEach(Runnable::run);
+  }
+
+  private List<JenkinsRequest> dispatchedRequests(int count) {
+    ArgumentCaptor<JenkinsRequest> captor = ArgumentCaptor.forClass(JenkinsRequest.class);
+    verify(dispatcher, times(count)).dispatch(captor.capture());
+    return captor.getAllValues();
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.util.Providers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.net.ahc.AdvancedHttpRequest;
+import sonia.scm.net.ahc.AdvancedHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JenkinsEventCapabilitiesTest {
+
+  private static final String SERVER = "http://hitchhiker.org/jenkins";
+  private static final String CAPABILITIES_URL = SERVER + "/" + JenkinsEventCapabilities.CAPABILITIES_ENDPOINT;
+
+  @Mock
+  private AdvancedHttpClient client;
+  @Mock(answer = Answers.RETURNS_SELF)
+  private AdvancedHttpRequest request;
+  @Mock
+  private AdvancedHttpResponse response;
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+  };
+
+  private JenkinsEventCapabilities capabilities;
+
+  @BeforeEach
+  void setUpCapabilities() {
+    capabilities = new JenkinsEventCapabilities(Providers.of(client), MoreExecutors.newDirectExecutorService(), ticker);
+    when(client.get(CAPABILITIES_URL)).thenReturn(request);
+  }
+
+  @Test
+  void shouldSupportBatch() throws IOException {
+    mockResponse(200, "{\"capabilities\":[\"batch\"]}");
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isTrue();
+  }
+
+  @Test
+  void shouldNotSupportBatchIfNotListed() throws IOException {
+    mockResponse(200, "{\"capabilities\":[\"something\"]}");
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+  }
+
+  @Test
+  void shouldNotSupportBatchWithoutCapabilitiesEndpoint() throws IOException {
+    when(request.request()).thenReturn(response);
+    when(response.getStatus()).thenReturn(404);
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+  }
+
+  @Test
+  void shouldNotSupportBatchIfJenkinsIsNotReachable() throws IOException {
+    when(request.request()).thenThrow(new IOException("connection refused"));
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+  }
+
+  @Test
+  void shouldProbeUnreachableServerAgainAfterShortTime() throws IOException {
+    when(request.request()).thenThrow(new IOException("connection refused")).thenReturn(response);
+    when(response.getStatus()).thenReturn(200);
+    when(response.contentAsStream()).thenReturn(new ByteArrayInputStream("{\"capabilities\":[\"batch\"]}".getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(JenkinsEventCapabilities.FAILED_PROBE_TTL + 1));
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isTrue();
+    verify(request, times(2)).request();
+  }
+
+  @Test
+  void shouldNotWaitForProbe() throws IOException {
+    List<Runnable> probes = new ArrayList<>();
+    ExecutorService executor = mock(ExecutorService.class);
+    doAnswer(invocation -> probes.add(invocation.getArgument(0))).when(executor).execute(any());
+    capabilities = new JenkinsEventCapabilities(Providers.of(client), executor, ticker);
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+    assertThat(capabilities.isBatchSupported(SERVER)).isFalse();
+    assertThat(probes).hasSize(1);
+
+    mockResponse(200, "{\"capabilities\":[\"batch\"]}");
+    probes.get(0).run();
+
+    assertThat(capabilities.isBatchSupported(SERVER)).isTrue();
+  }
+
+  @Test
+  void shouldCacheProbeResult() throws IOException {
+    mockResponse(200, "{\"capabilities\":[\"batch\"]}");
+
+    capabilities.isBatchSupported(SERVER);
+    capabilities.isBatchSupported(SERVER);
+
+    verify(request, times(1)).request();
+  }
+
+  private void mockResponse(int status, String content) throws IOException {
+    when(request.request()).thenReturn(response);
+    when(response.getStatus()).thenReturn(status);
+    when(response.contentAsStream()).thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+  }
+}
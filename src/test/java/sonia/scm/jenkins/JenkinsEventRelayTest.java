@@ -19,6 +19,7 @@ package sonia.scm.jenkins;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.util.Providers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -39,11 +40,12 @@ import sonia.scm.repository.RepositoryTestData;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Optional;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -69,6 +71,10 @@ class JenkinsEventRelayTest {
   private AdvancedHttpResponse response;
   @Mock
   private FormContentBuilder formContentBuilder;
+  @Mock
+  private JenkinsDispatcher dispatcher;
+  @Mock
+  private JenkinsEventBatcher batcher;
 
   private Set<AdditionalServerIdentification> serverIdentifications = new HashSet<>();
 
@@ -84,14 +90,15 @@ class JenkinsEventRelayTest {
 
   @BeforeEach
   void createSender() {
-    sender = new JenkinsEventRelay(configuration, jenkinsContext, httpClient, serverIdentifications);
+    sender = new JenkinsEventRelay(configuration, jenkinsContext, dispatcher, batcher, new ServerIdentificationCache(serverIdentifications));
+    DirectDispatch.dispatchDirectly(dispatcher, Providers.of(httpClient));
   }
 
   @Test
   void shouldNotSendEventsWhenTriggerDisabled() {
     GlobalJenkinsConfiguration configuration = new GlobalJenkinsConfiguration();
     configuration.setDisableEventTrigger(true);
-    when(jenkinsContext.getConfiguration()).thenReturn(configuration);
+    when(jenkinsContext.snapshot(REPOSITORY)).thenReturn(new JenkinsConfigurationSnapshot(configuration, null));
 
     sender.send(REPOSITORY, new JenkinsRepositoryEventDto(EventTarget.SOURCE, Collections.singletonList(new ProtocolResolverTest.DummyScmProtocol())));
 
@@ -100,14 +107,49 @@ class JenkinsEventRelayTest {
 
   @Test
   void shouldNotSendWithoutValidConfiguration() {
-    when(jenkinsContext.getConfiguration()).thenReturn(new GlobalJenkinsConfiguration());
-    when(jenkinsContext.getServerUrl(REPOSITORY)).thenReturn(Optional.empty());
+    when(jenkinsContext.snapshot(REPOSITORY)).thenReturn(new JenkinsConfigurationSnapshot(new GlobalJenkinsConfiguration(), null));
 
     sender.send(REPOSITORY, new JenkinsRepositoryEventDto(EventTarget.SOURCE, Collections.singletonList(new ProtocolResolverTest.DummyScmProtocol())));
 
     verify(httpClient, never()).post(anyString());
   }
 
+  @Test
+  void shouldPassEventToBatcher() throws JsonProcessingException {
+    GlobalJenkinsConfiguration globalConfiguration = new GlobalJenkinsConfiguration();
+    globalConfiguration.setEventBatching(true);
+    JenkinsConfiguration repositoryConfiguration = new JenkinsConfiguration();
+    repositoryConfiguration.setUrl("http://hitchhiker.org/");
+    when(jenkinsContext.snapshot(REPOSITORY)).thenReturn(new JenkinsConfigurationSnapshot(globalConfiguration, repositoryConfiguration));
+
+    sender.send(REPOSITORY, new JenkinsRepositoryEventDto(EventTarget.SOURCE, Collections.singletonList(new ProtocolResolverTest.DummyScmProtocol())));
+
+    verify(batcher).add(eq("http://hitchhiker.org/"), captor.capture());
+    verify(dispatcher, never()).dispatch(any());
+    assertThat(new ObjectMapper().readTree(captor.getValue()).get("name")).hasToString("\"" + REPOSITORY.getName() + "\"");
+  }
+
+  @Test
+  void shouldSendEventAsJsonBody() throws IOException {
+    GlobalJenkinsConfiguration globalConfiguration = new GlobalJenkinsConfiguration();
+    globalConfiguration.setEventJsonContent(true);
+    JenkinsConfiguration repositoryConfiguration = new JenkinsConfiguration();
+    repositoryConfiguration.setUrl("http://hitchhiker.org/");
+    when(jenkinsContext.snapshot(REPOSITORY)).thenReturn(new JenkinsConfigurationSnapshot(globalConfiguration, repositoryConfiguration));
+    when(httpClient.post(anyString())).thenReturn(request);
+    when(request.request()).thenReturn(response);
+
+    sender.send(REPOSITORY, new JenkinsRepositoryEventDto(EventTarget.SOURCE, Collections.singletonList(new ProtocolResolverTest.DummyScmProtocol())));
+
+    verify(httpClient).post("http://hitchhiker.org/" + EVENT_ENDPOINT);
+    verify(request).header("Content-Type", "application/json");
+    verify(request).stringContent(captor.capture());
+    verify(request, never()).formContent();
+    JsonNode dto = new ObjectMapper().readTree(captor.getValue());
+    assertThat(dto.get("name")).hasToString("\"" + REPOSITORY.getName() + "\"");
+    assertThat(dto.get("_links").has("dummy")).isTrue();
+  }
+
   @Nested
   class ForExpectedRequest {
 
@@ -156,9 +198,9 @@ class JenkinsEventRelayTest {
 
     String mockJenkinsConfig() {
       String jenkinsUrl = "http://hitchhiker.org/";
-      when(jenkinsContext.getServerUrl(REPOSITORY)).thenReturn(Optional.of(jenkinsUrl));
-      GlobalJenkinsConfiguration globalJenkinsConfiguration = new GlobalJenkinsConfiguration();
-      when(jenkinsContext.getConfiguration()).thenReturn(globalJenkinsConfiguration);
+      JenkinsConfiguration repositoryConfiguration = new JenkinsConfiguration();
+      repositoryConfiguration.setUrl(jenkinsUrl);
+      when(jenkinsContext.snapshot(REPOSITORY)).thenReturn(new JenkinsConfigurationSnapshot(new GlobalJenkinsConfiguration(), repositoryConfiguration));
       return jenkinsUrl;
     }
   }
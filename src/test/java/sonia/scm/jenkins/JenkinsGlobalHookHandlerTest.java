@@ -16,7 +16,6 @@
 
 package sonia.scm.jenkins;
 
-import com.google.inject.Provider;
 import com.google.inject.util.Providers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -37,10 +36,12 @@ import sonia.scm.repository.api.RepositoryService;
 import sonia.scm.repository.api.RepositoryServiceFactory;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -61,6 +62,13 @@ class JenkinsGlobalHookHandlerTest {
   private AdvancedHttpResponse response;
   @Mock(answer = Answers.RETURNS_DEEP_STUBS)
   private HookContext hookContext;
+  @Mock
+  private JenkinsDispatcher dispatcher;
+
+  @BeforeEach
+  void dispatchDirectly() {
+    DirectDispatch.dispatchDirectly(dispatcher, Providers.of(advancedHttpClient));
+  }
 
   @Nested
   class ForHg {
@@ -68,8 +76,7 @@ class JenkinsGlobalHookHandlerTest {
 
     @BeforeEach
     void initClient() {
-      Provider<AdvancedHttpClient> httpClientProvider = Providers.of(advancedHttpClient);
-      handler = new JenkinsHgGlobalHookHandler(httpClientProvider, config, serviceFactory);
+      handler = new JenkinsHgGlobalHookHandler(dispatcher, config, new ProtocolResolver(serviceFactory));
     }
 
     @Test
@@ -88,6 +95,7 @@ class JenkinsGlobalHookHandlerTest {
       void initValidConfig() {
         when(config.isValid()).thenReturn(true);
         lenient().when(config.getUrl()).thenReturn("jenkins.io/scm/");
+        lenient().when(config.getServers()).thenCallRealMethod();
       }
 
       @Test
@@ -123,14 +131,14 @@ class JenkinsGlobalHookHandlerTest {
 
     @BeforeEach
     void initClient() {
-      Provider<AdvancedHttpClient> httpClientProvider = Providers.of(advancedHttpClient);
-      handler = new JenkinsGitGlobalHookHandler(httpClientProvider, config, serviceFactory);
+      handler = new JenkinsGitGlobalHookHandler(dispatcher, config, new ProtocolResolver(serviceFactory));
     }
 
     @BeforeEach
     void initValidConfig() {
       when(config.isValid()).thenReturn(true);
       lenient().when(config.getUrl()).thenReturn("jenkins.io/scm/");
+      lenient().when(config.getServers()).thenCallRealMethod();
     }
 
     @Test
@@ -155,6 +163,24 @@ class JenkinsGlobalHookHandlerTest {
 
       verify(advancedHttpClient).get("jenkins.io/scm/git/notifyCommit");
     }
+
+    @Test
+    void shouldSendRequestToEveryServer() throws IOException {
+      Repository repository = RepositoryTestData.createHeartOfGold();
+      repository.setType("git");
+      when(config.isDisableGitTrigger()).thenReturn(false);
+      when(config.getAdditionalServers()).thenReturn(List.of(
+        new JenkinsServer("security.jenkins.io/", null, null),
+        new JenkinsServer("", null, null)
+      ));
+      mockHttpClient(repository);
+
+      handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+      verify(advancedHttpClient).get("jenkins.io/scm/git/notifyCommit");
+      verify(advancedHttpClient).get("security.jenkins.io/git/notifyCommit");
+      verify(advancedHttpClient, times(2)).get(anyString());
+    }
   }
 
   private void mockHttpClient(Repository repository) throws IOException {
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.security.CipherHandler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class JenkinsOutboxTest {
+
+  private static final Instant NOW = Instant.parse("2026-10-18T10:00:00Z");
+
+  @TempDir
+  Path directory;
+
+  @Mock
+  private CipherHandler cipher;
+
+  private JenkinsOutbox outbox;
+
+  @BeforeEach
+  void setUpCipher() {
+    lenient().when(cipher.encode(anyString())).thenAnswer(
+      invocation -> Base64.getEncoder().encodeToString(invocation.<String>getArgument(0).getBytes(StandardCharsets.UTF_8))
+    );
+    lenient().when(cipher.decode(anyString())).thenAnswer(
+      invocation -> new String(Base64.getDecoder().decode(invocation.<String>getArgument(0)), StandardCharsets.UTF_8)
+    );
+    outbox = create(NOW);
+  }
+
+  @AfterEach
+  void closeOutbox() {
+    outbox.close();
+  }
+
+  @Test
+  void shouldReplayPendingRequestsAfterRestart() {
+    JenkinsRequest first = request("first");
+    JenkinsRequest second = request("second");
+    outbox.append(first);
+    long id = outbox.append(second);
+    outbox.acknowledge(outbox.pending().get(0).getId());
+    outbox.close();
+
+    outbox = create(NOW);
+    List<JenkinsOutbox.Entry> pending = outbox.pending();
+
+    assertThat(pending).hasSize(1);
+    assertThat(pending.get(0).getId()).isEqualTo(id);
+    assertThat(pending.get(0).getRequest()).isEqualTo(second);
+  }
+
+  @Test
+  void shouldContinueIdsAfterRestart() {
+    long id = outbox.append(request("first"));
+    outbox.close();
+
+    outbox = create(NOW);
+
+    assertThat(outbox.append(request("second"))).isGreaterThan(id);
+  }
+
+  @Test
+  void shouldStoreRequestsEncrypted() throws IOException {
+    outbox.append(JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/secret/build")
+      .apiToken("secret-token")
+      .build());
+
+    String content = new String(Files.readAllBytes(directory.resolve(JenkinsOutbox.FILE_NAME)), StandardCharsets.UTF_8);
+
+    assertThat(content).doesNotContain("secret-token");
+  }
+
+  @Test
+  void shouldDropOutdatedRequests() {
+    outbox.append(request("old"));
+    outbox.close();
+
+    outbox = create(NOW.plus(JenkinsOutbox.MAX_AGE).plusSeconds(1));
+
+    assertThat(outbox.pending()).isEmpty();
+  }
+
+  @Test
+  void shouldSkipIncompleteLastLine() throws IOException {
+    JenkinsRequest request = request("complete");
+    outbox.append(request);
+    outbox.close();
+    Files.write(directory.resolve(JenkinsOutbox.FILE_NAME), "A 2 17".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    outbox = create(NOW);
+
+    assertThat(outbox.pending()).extracting(JenkinsOutbox.Entry::getRequest).containsExactly(request);
+  }
+
+  @Test
+  void shouldCompactLogAfterAcknowledgements() throws IOException {
+    for (int i = 0; i < JenkinsOutbox.COMPACTION_THRESHOLD; i++) {
+      outbox.acknowledge(outbox.append(request("job-" + i)));
+    }
+    JenkinsRequest pending = request("pending");
+    outbox.append(pending);
+
+    List<String> lines = Files.readAllLines(directory.resolve(JenkinsOutbox.FILE_NAME), StandardCharsets.UTF_8);
+
+    assertThat(lines).hasSize(1);
+    assertThat(outbox.pending()).extracting(JenkinsOutbox.Entry::getRequest).containsExactly(pending);
+  }
+
+  @Test
+  void shouldKeepWritingIfCompactionFails() throws IOException {
+    Files.createDirectories(directory.resolve(JenkinsOutbox.FILE_NAME + ".tmp").resolve("blocked"));
+    for (int i = 0; i < JenkinsOutbox.COMPACTION_THRESHOLD; i++) {
+      outbox.acknowledge(outbox.append(request("job-" + i)));
+    }
+    JenkinsRequest pending = request("pending");
+    outbox.append(pending);
+    outbox.close();
+
+    outbox = create(NOW);
+
+    assertThat(outbox.pending()).extracting(JenkinsOutbox.Entry::getRequest).containsExactly(pending);
+  }
+
+  @Test
+  void shouldAppendConcurrently() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 200; i++) {
+      JenkinsRequest request = request("job-" + i);
+      executor.execute(() -> outbox.append(request));
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    outbox.close();
+
+    outbox = create(NOW);
+
+    assertThat(outbox.pending()).hasSize(200);
+  }
+
+  private JenkinsOutbox create(Instant now) {
+    return new JenkinsOutbox(directory, cipher, Clock.fixed(now, ZoneOffset.UTC));
+  }
+
+  private JenkinsRequest request(String name) {
+    return JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/" + name + "/build")
+      .parameter("token", "secret")
+      .build();
+  }
+}
@@ -16,7 +16,6 @@
 
 package sonia.scm.jenkins;
 
-import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -28,10 +27,6 @@ import sonia.scm.repository.RepositoryModificationEvent;
 import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.security.AuthorizationChangedEvent;
 
-import java.util.Objects;
-
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
@@ -39,7 +34,7 @@ import static org.mockito.Mockito.verify;
 class JenkinsRepositoryEventRelayTest {
 
   @Mock
-  private JenkinsEventRelay jenkinsEventRelay;
+  private NavigatorEventDebouncer navigatorEventDebouncer;
 
   @InjectMocks
   private JenkinsRepositoryEventRelay relay;
@@ -50,7 +45,7 @@ class JenkinsRepositoryEventRelayTest {
 
     relay.handleAuthorizationEvent(event);
 
-    verify(jenkinsEventRelay).send(argThat(Objects::nonNull));
+    verify(navigatorEventDebouncer).trigger();
   }
 
   @Test
@@ -62,10 +57,7 @@ class JenkinsRepositoryEventRelayTest {
 
     relay.handleRepositoryModificationEvent(event);
 
-    verify(jenkinsEventRelay).send(argThat(argument -> {
-      Assertions.assertThat(argument.getEventTarget()).isEqualTo(EventTarget.NAVIGATOR);
-      return true;
-    }));
+    verify(navigatorEventDebouncer).trigger();
   }
 
   @Test
@@ -74,6 +66,6 @@ class JenkinsRepositoryEventRelayTest {
 
     relay.handleRepositoryModificationEvent(event);
 
-    verify(jenkinsEventRelay, never()).send(any());
+    verify(navigatorEventDebouncer, never()).trigger();
   }
 }
@@ -16,9 +16,10 @@
 
 package sonia.scm.jenkins;
 
-import com.cloudogu.scm.el.ElParser;
 import com.cloudogu.scm.el.jexl.JexlParser;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,6 +27,7 @@ import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.net.ahc.AdvancedHttpRequest;
 import sonia.scm.net.ahc.AdvancedHttpRequestWithBody;
 import sonia.scm.net.ahc.AdvancedHttpResponse;
 import sonia.scm.repository.Changeset;
@@ -35,13 +37,26 @@ import sonia.scm.repository.RepositoryHookEvent;
 import sonia.scm.repository.RepositoryHookType;
 import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.repository.api.HookContext;
+import sonia.scm.repository.api.HookFeature;
+import sonia.scm.store.InMemoryConfigurationStoreFactory;
 import sonia.scm.util.HttpUtil;
 
 import jakarta.inject.Provider;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -57,10 +72,16 @@ class JenkinsRepositoryHookHandlerTest {
   private AdvancedHttpRequestWithBody request;
   @Mock
   private AdvancedHttpResponse response;
+  @Mock(answer = Answers.RETURNS_SELF)
+  private AdvancedHttpRequest crumbRequest;
+  @Mock
+  private AdvancedHttpResponse crumbResponse;
   @Mock(answer = Answers.RETURNS_DEEP_STUBS)
   private HookContext hookContext;
+  @Mock
+  private JenkinsDispatcher dispatcher;
 
-  private final ElParser elParser = new JexlParser();
+  private final BuildParameterTemplates templates = new BuildParameterTemplates(new JexlParser());
 
   private JenkinsRepositoryHookHandler handler;
 
@@ -69,7 +90,8 @@ class JenkinsRepositoryHookHandlerTest {
     config = new JenkinsConfiguration();
     config.setUrl("http://hitchhiker.org/jenkins");
     config.setProject("HeartOfGold");
-    handler = new JenkinsRepositoryHookHandler(httpClientProvider, config, elParser);
+    handler = new JenkinsRepositoryHookHandler(dispatcher, config, templates);
+    DirectDispatch.dispatchDirectly(dispatcher, httpClientProvider);
   }
 
   @Test
@@ -78,12 +100,12 @@ class JenkinsRepositoryHookHandlerTest {
     when(request.spanKind("Jenkins").request()).thenReturn(response);
     when(response.getStatus()).thenReturn(200);
     when(advancedHttpClient.post(anyString())).thenReturn(request);
-    when(hookContext.getChangesetProvider().getChangesets()).thenReturn(null);
 
     Repository repository = RepositoryTestData.createHeartOfGold();
     handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
 
     verify(advancedHttpClient).post(config.getUrl() + "/job/" + config.getProject() + "/build");
+    verify(hookContext, never()).getChangesetProvider();
   }
 
   @Test
@@ -103,6 +125,28 @@ class JenkinsRepositoryHookHandlerTest {
     verify(advancedHttpClient).post(config.getUrl() + "/job/" + config.getProject() + "/buildWithParameters?author=trillian+%40hitchhiker%2F42");
   }
 
+  @Test
+  void shouldSendToAdditionalTargets() throws IOException {
+    when(httpClientProvider.get()).thenReturn(advancedHttpClient);
+    when(request.spanKind("Jenkins").request()).thenReturn(response);
+    when(response.getStatus()).thenReturn(200);
+    when(advancedHttpClient.post(anyString())).thenReturn(request);
+    when(hookContext.getChangesetProvider().getChangesets()).thenReturn(null);
+    config.setBuildParameters(ImmutableSet.of(new BuildParameter("author", "trillian")));
+    config.setAdditionalTargets(List.of(
+      new JenkinsTarget("http://security.hitchhiker.org/jenkins/", "Scan", "42", null, null, false),
+      new JenkinsTarget("http://invalid.hitchhiker.org/jenkins", null, null, null, null, false)
+    ));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(advancedHttpClient).post(config.getUrl() + "/job/HeartOfGold/buildWithParameters?author=trillian");
+    verify(advancedHttpClient).post("http://security.hitchhiker.org/jenkins/job/Scan/buildWithParameters?author=trillian");
+    verify(request).queryString(JenkinsRepositoryHookHandler.PARAMETER_TOKEN, "42");
+    verify(advancedHttpClient, times(2)).post(anyString());
+  }
+
   @Test
   void shouldSendWithMultipleBuildParameters() throws IOException {
     when(httpClientProvider.get()).thenReturn(advancedHttpClient);
@@ -158,4 +202,167 @@ class JenkinsRepositoryHookHandlerTest {
         + HttpUtil.encode(changeset.getAuthor().getMail())
     );
   }
+
+  @Test
+  void shouldSendIfCreatedBranchMatchesPattern() throws IOException {
+    when(httpClientProvider.get()).thenReturn(advancedHttpClient);
+    when(request.spanKind("Jenkins").request()).thenReturn(response);
+    when(response.getStatus()).thenReturn(200);
+    when(advancedHttpClient.post(anyString())).thenReturn(request);
+    when(hookContext.isFeatureSupported(HookFeature.BRANCH_PROVIDER)).thenReturn(true);
+    when(hookContext.getBranchProvider().getCreatedOrModified()).thenReturn(ImmutableList.of("feature/spaceship"));
+    config.setBranches(ImmutableSet.of("feature/*"));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(advancedHttpClient).post(config.getUrl() + "/job/" + config.getProject() + "/build");
+    verify(hookContext, never()).getChangesetProvider();
+  }
+
+  @Test
+  void shouldNotSendIfNoCreatedBranchMatches() {
+    when(hookContext.isFeatureSupported(HookFeature.BRANCH_PROVIDER)).thenReturn(true);
+    when(hookContext.getBranchProvider().getCreatedOrModified()).thenReturn(ImmutableList.of("develop"));
+    config.setBranches(ImmutableSet.of("regex:main|release/.*"));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(dispatcher, never()).dispatch(any());
+  }
+
+  @Test
+  void shouldReadOnlyFirstChangesetOfLargePushForBuildParameters() {
+    doNothing().when(dispatcher).dispatch(any());
+    GeneratedChangesets changesets = new GeneratedChangesets(100_000, "develop");
+    when(hookContext.getChangesetProvider().getChangesets()).thenReturn(changesets);
+    config.setBuildParameters(ImmutableSet.of(new BuildParameter("commitId", "${commit.id}")));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(dispatcher).dispatch(argThat(request -> request.getUrl().endsWith("buildWithParameters?commitId=0")));
+    assertThat(changesets.created).isEqualTo(1);
+  }
+
+  @Test
+  void shouldStopAtFirstMatchingChangesetOfLargePush() {
+    doNothing().when(dispatcher).dispatch(any());
+    GeneratedChangesets changesets = new GeneratedChangesets(100_000, "develop");
+    changesets.branchAt(42, "main");
+    when(hookContext.getChangesetProvider().getChangesets()).thenReturn(changesets);
+    config.setBranches(ImmutableSet.of("main"));
+    config.setBuildParameters(ImmutableSet.of(new BuildParameter("commitId", "${commit.id}")));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(dispatcher).dispatch(argThat(request -> request.getUrl().endsWith("buildWithParameters?commitId=0")));
+    assertThat(changesets.created).isEqualTo(43);
+  }
+
+  @Test
+  void shouldTriggerMatchingJobsInOnePass() {
+    doNothing().when(dispatcher).dispatch(any());
+    GeneratedChangesets changesets = new GeneratedChangesets(100_000, "develop");
+    changesets.branchAt(42, "main");
+    when(hookContext.getChangesetProvider().getChangesets()).thenReturn(changesets);
+    config.setBranches(ImmutableSet.of("main"));
+    config.setToken("secret");
+    config.setJobs(List.of(
+      new JenkinsJob("Docs", "docs-token", ImmutableSet.of("develop"), ImmutableSet.of(new BuildParameter("commitId", "${commit.id}"))),
+      new JenkinsJob("Release", null, ImmutableSet.of("release/*"), ImmutableSet.of()),
+      new JenkinsJob("", null, ImmutableSet.of(), ImmutableSet.of())
+    ));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(dispatcher).dispatch(argThat(request -> request.getUrl().equals(config.getUrl() + "/job/HeartOfGold/build")
+      && "secret".equals(request.getParameters().get(JenkinsRepositoryHookHandler.PARAMETER_TOKEN))));
+    verify(dispatcher).dispatch(argThat(request -> request.getUrl().equals(config.getUrl() + "/job/Docs/buildWithParameters?commitId=0")
+      && "docs-token".equals(request.getParameters().get(JenkinsRepositoryHookHandler.PARAMETER_TOKEN))));
+    verify(dispatcher, times(2)).dispatch(any());
+    // the release job never matches, but the changesets are iterated only once
+    assertThat(changesets.created).isEqualTo(100_000);
+    assertThat(changesets.iterations).isEqualTo(1);
+  }
+
+  @Test
+  void shouldShareCrumbBetweenJobs() throws IOException {
+    JenkinsMetrics metrics = new JenkinsMetrics(new SimpleMeterRegistry());
+    CsrfCrumbCache crumbCache = new CsrfCrumbCache(new JenkinsContext(new InMemoryConfigurationStoreFactory(), metrics), metrics);
+    JenkinsRequestSender sender = new JenkinsRequestSender(httpClientProvider, crumbCache, new JenkinsCircuitBreaker(), metrics);
+    doAnswer(invocation -> sender.send(invocation.getArgument(0))).when(dispatcher).dispatch(any());
+    when(httpClientProvider.get()).thenReturn(advancedHttpClient);
+    when(advancedHttpClient.post(anyString())).thenReturn(request);
+    when(request.spanKind("Jenkins").request()).thenReturn(response);
+    when(response.getStatus()).thenReturn(200);
+    when(advancedHttpClient.get(anyString())).thenReturn(crumbRequest);
+    when(crumbRequest.spanKind("Jenkins").request()).thenReturn(crumbResponse);
+    when(crumbResponse.getStatus()).thenReturn(200);
+    when(crumbResponse.contentAsStream()).thenReturn(
+      new ByteArrayInputStream("{\"crumb\":\"42\",\"crumbRequestField\":\"Jenkins-Crumb\"}".getBytes(StandardCharsets.UTF_8))
+    );
+    config.setCsrf(true);
+    config.setUsername("trillian");
+    config.setApiToken("secret");
+    config.setJobs(List.of(
+      new JenkinsJob("Docs", null, ImmutableSet.of(), ImmutableSet.of()),
+      new JenkinsJob("Release", null, ImmutableSet.of(), ImmutableSet.of())
+    ));
+
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(advancedHttpClient, times(3)).post(anyString());
+    verify(advancedHttpClient).get(config.getUrl() + "/crumbIssuer/api/json");
+  }
+
+  /**
+   * Creates the changesets while they are iterated, like the changeset
+   * providers of large pushes do, and counts how many were created.
+   */
+  private static class GeneratedChangesets implements Iterable<Changeset> {
+
+    private final int size;
+    private final String branch;
+    private int matchingIndex = -1;
+    private String matchingBranch;
+    private int created;
+    private int iterations;
+
+    GeneratedChangesets(int size, String branch) {
+      this.size = size;
+      this.branch = branch;
+    }
+
+    void branchAt(int index, String branch) {
+      this.matchingIndex = index;
+      this.matchingBranch = branch;
+    }
+
+    @Override
+    public Iterator<Changeset> iterator() {
+      iterations++;
+      return new Iterator<Changeset>() {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+          return index < size;
+        }
+
+        @Override
+        public Changeset next() {
+          Changeset changeset = new Changeset(String.valueOf(index), (long) index, new Person("trillian"));
+          changeset.setBranches(ImmutableList.of(index == matchingIndex ? matchingBranch : branch));
+          index++;
+          created++;
+          return changeset;
+        }
+      };
+    }
+  }
 }
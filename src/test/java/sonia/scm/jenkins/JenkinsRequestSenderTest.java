@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.inject.util.Providers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.net.ahc.AdvancedHttpClient;
+import sonia.scm.net.ahc.AdvancedHttpRequestWithBody;
+import sonia.scm.net.ahc.AdvancedHttpResponse;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JenkinsRequestSenderTest {
+
+  private static final String JENKINS_URL = "http://hitchhiker.org/jenkins";
+  private static final String INVALID_CRUMB = "<html><body><h2>HTTP ERROR 403 No valid crumb was included in the request</h2></body></html>";
+
+  @Mock
+  private AdvancedHttpClient client;
+  @Mock(answer = Answers.RETURNS_SELF)
+  private AdvancedHttpRequestWithBody request;
+  @Mock
+  private AdvancedHttpResponse response;
+  @Mock
+  private CsrfCrumbCache crumbCache;
+
+  private final JenkinsCircuitBreaker circuitBreaker = new JenkinsCircuitBreaker();
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private JenkinsRequestSender sender;
+
+  @BeforeEach
+  void setUpSender() throws IOException {
+    sender = new JenkinsRequestSender(Providers.of(client), crumbCache, circuitBreaker, new JenkinsMetrics(registry));
+    when(client.post(anyString())).thenReturn(request);
+    when(request.request()).thenReturn(response);
+  }
+
+  @Test
+  void shouldSendRequestWithParameters() throws IOException {
+    when(response.getStatus()).thenReturn(200);
+
+    int statusCode = sender.send(JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl(JENKINS_URL)
+      .url(JENKINS_URL + "/job/HeartOfGold/build")
+      .parameter("token", "42")
+      .build());
+
+    assertThat(statusCode).isEqualTo(200);
+    verify(client).post(JENKINS_URL + "/job/HeartOfGold/build");
+    verify(request).queryString("token", "42");
+  }
+
+  @Test
+  void shouldRetryOnceWithNewCrumbIfJenkinsRejectsTheCrumb() throws IOException {
+    when(crumbCache.get(client, JENKINS_URL, "trillian", "secret"))
+      .thenReturn(new CsrfCrumb("old", "Jenkins-Crumb"), new CsrfCrumb("new", "Jenkins-Crumb"));
+    when(response.getStatus()).thenReturn(403, 200);
+    when(response.contentAsString()).thenReturn(INVALID_CRUMB);
+
+    int statusCode = sender.send(csrfRequest());
+
+    assertThat(statusCode).isEqualTo(200);
+    verify(crumbCache).invalidate(JENKINS_URL, "trillian");
+    verify(request).header("Jenkins-Crumb", "old");
+    verify(request).header("Jenkins-Crumb", "new");
+  }
+
+  @Test
+  void shouldRetryOnlyOnce() throws IOException {
+    when(crumbCache.get(client, JENKINS_URL, "trillian", "secret")).thenReturn(new CsrfCrumb("abc", "Jenkins-Crumb"));
+    when(response.getStatus()).thenReturn(403);
+    when(response.contentAsString()).thenReturn(INVALID_CRUMB);
+
+    int statusCode = sender.send(csrfRequest());
+
+    assertThat(statusCode).isEqualTo(403);
+    verify(request, times(2)).request();
+  }
+
+  @Test
+  void shouldNotRetryIfJenkinsDeniesAccess() throws IOException {
+    when(crumbCache.get(client, JENKINS_URL, "trillian", "secret")).thenReturn(new CsrfCrumb("abc", "Jenkins-Crumb"));
+    when(response.getStatus()).thenReturn(403);
+    when(response.contentAsString()).thenReturn("trillian is missing the Job/Build permission");
+
+    int statusCode = sender.send(csrfRequest());
+
+    assertThat(statusCode).isEqualTo(403);
+    verify(request).request();
+    verify(crumbCache, never()).invalidate(anyString(), anyString());
+  }
+
+  @Test
+  void shouldNotSendRequestsWhileCircuitIsOpen() throws IOException {
+    when(response.getStatus()).thenReturn(503);
+    JenkinsRequest jenkinsRequest = JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl(JENKINS_URL)
+      .url(JENKINS_URL + "/job/HeartOfGold/build")
+      .build();
+
+    for (int i = 0; i < JenkinsCircuitBreaker.FAILURE_THRESHOLD; i++) {
+      assertThat(sender.send(jenkinsRequest)).isEqualTo(503);
+    }
+
+    assertThrows(CircuitOpenException.class, () -> sender.send(jenkinsRequest));
+    verify(request, times(JenkinsCircuitBreaker.FAILURE_THRESHOLD)).request();
+  }
+
+  @Test
+  void shouldRecordRequestMetrics() throws IOException {
+    when(response.getStatus()).thenReturn(200, 503);
+    JenkinsRequest jenkinsRequest = JenkinsRequest.builder()
+      .type("git")
+      .serverUrl(JENKINS_URL)
+      .url(JENKINS_URL + "/git/notifyCommit")
+      .build();
+
+    sender.send(jenkinsRequest);
+    sender.send(jenkinsRequest);
+
+    assertThat(registry.get(JenkinsMetrics.REQUEST).tags(JenkinsMetrics.TAG_SERVER, JENKINS_URL, JenkinsMetrics.TAG_TYPE, "git", JenkinsMetrics.TAG_STATUS, "2xx").timer().count()).isEqualTo(1);
+    assertThat(registry.get(JenkinsMetrics.REQUEST).tag(JenkinsMetrics.TAG_STATUS, "5xx").timer().count()).isEqualTo(1);
+    assertThat(registry.get(JenkinsMetrics.REQUEST_FAILURES).tag(JenkinsMetrics.TAG_STATUS, "5xx").counter().count()).isEqualTo(1);
+    assertThat(registry.find(JenkinsMetrics.REQUEST_FAILURES).tag(JenkinsMetrics.TAG_STATUS, "2xx").counter()).isNull();
+  }
+
+  @Test
+  void shouldCountUnreachableServerAsFailure() throws IOException {
+    when(request.request()).thenThrow(new IOException("connection refused"));
+    JenkinsRequest jenkinsRequest = JenkinsRequest.builder()
+      .type("event")
+      .serverUrl(JENKINS_URL)
+      .url(JENKINS_URL + "/scm-manager-hook/notify")
+      .build();
+
+    assertThrows(IOException.class, () -> sender.send(jenkinsRequest));
+
+    assertThat(registry.get(JenkinsMetrics.REQUEST_FAILURES).tags(JenkinsMetrics.TAG_TYPE, "event", JenkinsMetrics.TAG_STATUS, JenkinsMetrics.STATUS_IO_ERROR).counter().count()).isEqualTo(1);
+  }
+
+  private JenkinsRequest csrfRequest() {
+    return JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl(JENKINS_URL)
+      .url(JENKINS_URL + "/job/HeartOfGold/build")
+      .username("trillian")
+      .apiToken("secret")
+      .authenticate(true)
+      .csrf(true)
+      .build();
+  }
+}
@@ -32,6 +32,7 @@ import sonia.scm.net.ahc.AdvancedHttpRequestWithBody;
 import sonia.scm.net.ahc.AdvancedHttpResponse;
 import sonia.scm.repository.Added;
 import sonia.scm.repository.Changeset;
+import sonia.scm.repository.ClearRepositoryCacheEvent;
 import sonia.scm.repository.Copied;
 import sonia.scm.repository.Modification;
 import sonia.scm.repository.Modifications;
@@ -59,7 +60,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.RETURNS_SELF;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -86,13 +89,20 @@ class JenkinsSvnGlobalHookHandlerTest {
   private HookContext hookContext;
   @Mock
   private HookChangesetBuilder changesetProvider;
+  @Mock
+  private JenkinsDispatcher dispatcher;
+
+  private final SvnUuidCache uuidCache = new SvnUuidCache();
 
   private JenkinsSvnGlobalHookHandler handler;
 
   @BeforeEach
   void initClient() {
     Provider<AdvancedHttpClient> httpClientProvider = Providers.of(advancedHttpClient);
-    handler = new JenkinsSvnGlobalHookHandler(httpClientProvider, config, serviceFactory);
+    handler = new JenkinsSvnGlobalHookHandler(dispatcher, config, serviceFactory, uuidCache);
+    lenient().when(config.getServers()).thenCallRealMethod();
+
+    DirectDispatch.dispatchDirectly(dispatcher, httpClientProvider);
   }
 
   @Test
@@ -164,6 +174,39 @@ class JenkinsSvnGlobalHookHandlerTest {
       .contains("D   pom.xml");
   }
 
+  @Test
+  void shouldLookupUuidOnlyOnceAndUseSingleService() throws IOException {
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    when(config.isDisableSubversionTrigger()).thenReturn(false);
+    when(config.getUrl()).thenReturn("http://jenkins.io/scm/");
+    mockHttpClient(repository, ArgumentCaptor.forClass(String.class));
+    mockChangesetProvider();
+    mockModifications();
+
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(advancedHttpClient, times(2)).post("http://jenkins.io/scm/subversion/uuid-42/notifyCommit/?rev=1");
+    verify(lookupCommand, times(1)).lookup(String.class, "propget", "uuid", "/");
+    verify(serviceFactory, times(2)).create(repository);
+  }
+
+  @Test
+  void shouldLookupUuidAgainAfterImport() throws IOException {
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    when(config.isDisableSubversionTrigger()).thenReturn(false);
+    when(config.getUrl()).thenReturn("http://jenkins.io/scm/");
+    mockHttpClient(repository, ArgumentCaptor.forClass(String.class));
+    mockChangesetProvider();
+    mockModifications();
+
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+    uuidCache.handle(new ClearRepositoryCacheEvent(repository));
+    handler.sendRequest(new RepositoryHookEvent(hookContext, repository, RepositoryHookType.POST_RECEIVE));
+
+    verify(lookupCommand, times(2)).lookup(String.class, "propget", "uuid", "/");
+  }
+
   private void mockModifications() throws IOException {
     when(repositoryService.getModificationsCommand()).thenReturn(modificationsCommand);
     ImmutableList<Modification> modifications = ImmutableList.of(
@@ -178,7 +221,7 @@ class JenkinsSvnGlobalHookHandlerTest {
 
   private void mockChangesetProvider() {
     when(hookContext.getChangesetProvider()).thenReturn(changesetProvider);
-    when(changesetProvider.getChangesetList()).thenReturn(ImmutableList.of(new Changeset("1", 0L, Person.toPerson("trillian"))));
+    when(changesetProvider.getChangesets()).thenReturn(ImmutableList.of(new Changeset("1", 0L, Person.toPerson("trillian"))));
   }
 
   private void mockHttpClient(Repository repository, ArgumentCaptor<String> contentCaptor) throws IOException {
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NavigatorEventDebouncerTest {
+
+  @Mock
+  private JenkinsContext context;
+  @Mock
+  private JenkinsEventRelay relay;
+  @Mock
+  private ScheduledExecutorService scheduler;
+  @Mock
+  private ScheduledFuture<?> future;
+
+  private final GlobalJenkinsConfiguration configuration = new GlobalJenkinsConfiguration();
+  private final MutableClock clock = new MutableClock();
+
+  private NavigatorEventDebouncer debouncer;
+
+  @BeforeEach
+  void setUpDebouncer() {
+    when(context.getConfiguration()).thenReturn(configuration);
+    configuration.setNavigatorEventQuietPeriod(5);
+    configuration.setNavigatorEventMaxDelay(10);
+    debouncer = new NavigatorEventDebouncer(context, relay, scheduler, clock);
+  }
+
+  @Test
+  void shouldSendImmediatelyWithoutQuietPeriod() {
+    configuration.setNavigatorEventQuietPeriod(0);
+
+    debouncer.trigger();
+
+    verifyNavigatorEventSent(1);
+    verifyNoInteractions(scheduler);
+  }
+
+  @Test
+  void shouldSendAfterQuietPeriod() {
+    mockScheduler();
+
+    debouncer.trigger();
+
+    verify(relay, never()).send(any(JenkinsEventDto.class));
+    assertThat(scheduledDelays()).containsExactly(5000L);
+
+    scheduledFlushes().get(0).run();
+
+    verifyNavigatorEventSent(1);
+  }
+
+  @Test
+  void shouldCollapseBurstIntoSingleEvent() {
+    mockScheduler();
+
+    debouncer.trigger();
+    clock.advance(Duration.ofSeconds(1));
+    debouncer.trigger();
+    clock.advance(Duration.ofSeconds(1));
+    debouncer.trigger();
+
+    verify(future, times(2)).cancel(false);
+    assertThat(scheduledDelays()).containsExactly(5000L, 5000L, 5000L);
+
+    List<Runnable> flushes = scheduledFlushes();
+    flushes.get(0).run();
+    flushes.get(1).run();
+    verify(relay, never()).send(any(JenkinsEventDto.class));
+
+    flushes.get(2).run();
+    verifyNavigatorEventSent(1);
+  }
+
+  @Test
+  void shouldNotDelayLongerThanMaxDelay() {
+    mockScheduler();
+
+    debouncer.trigger();
+    clock.advance(Duration.ofSeconds(4));
+    debouncer.trigger();
+    clock.advance(Duration.ofSeconds(4));
+    debouncer.trigger();
+
+    assertThat(scheduledDelays()).containsExactly(5000L, 5000L, 2000L);
+  }
+
+  @Test
+  void shouldStartNewBurstAfterSending() {
+    mockScheduler();
+
+    debouncer.trigger();
+    scheduledFlushes().get(0).run();
+    clock.advance(Duration.ofSeconds(30));
+    debouncer.trigger();
+    scheduledFlushes().get(1).run();
+
+    verify(future, never()).cancel(false);
+    verifyNavigatorEventSent(2);
+  }
+
+  @Test
+  void shouldSendPendingEventOnShutdown() {
+    mockScheduler();
+
+    debouncer.trigger();
+    debouncer.contextDestroyed(null);
+
+    verify(scheduler).shutdownNow();
+    verifyNavigatorEventSent(1);
+  }
+
+  private void mockScheduler() {
+    doReturn(future).when(scheduler).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  private List<Runnable> scheduledFlushes() {
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler, atLeastOnce()).schedule(captor.capture(), anyLong(), any());
+    return captor.getAllValues();
+  }
+
+  private List<Long> scheduledDelays() {
+    ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+    verify(scheduler, atLeastOnce()).schedule(any(Runnable.class), captor.capture(), any(TimeUnit.class));
+    return captor.getAllValues();
+  }
+
+  private void verifyNavigatorEventSent(int times) {
+    verify(relay, times(times)).send(argThat((JenkinsEventDto dto) -> dto.getEventTarget() == EventTarget.NAVIGATOR));
+  }
+}
@@ -22,16 +22,24 @@ import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.HandlerEventType;
+import sonia.scm.config.ScmConfigurationChangedEvent;
 import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryModificationEvent;
 import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.repository.api.RepositoryService;
 import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.repository.api.ScmProtocol;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({MockitoExtension.class})
@@ -60,6 +68,65 @@ class ProtocolResolverTest {
     assertThat(result).containsExactly(protocol);
   }
 
+  @Test
+  void shouldCacheProtocolsPerRepository() {
+    mockProtocols();
+
+    protocolResolver.getProtocols(REPOSITORY);
+    protocolResolver.getProtocols(REPOSITORY);
+
+    verify(repositoryServiceFactory, times(1)).create(REPOSITORY);
+  }
+
+  @Test
+  void shouldResolveAgainAfterModification() {
+    mockProtocols();
+
+    protocolResolver.getProtocols(REPOSITORY);
+    protocolResolver.handle(new RepositoryModificationEvent(HandlerEventType.MODIFY, REPOSITORY, REPOSITORY));
+    protocolResolver.getProtocols(REPOSITORY);
+
+    verify(repositoryServiceFactory, times(2)).create(REPOSITORY);
+  }
+
+  @Test
+  void shouldResolveAgainAfterDeletion() {
+    mockProtocols();
+
+    protocolResolver.getProtocols(REPOSITORY);
+    protocolResolver.handle(new RepositoryEvent(HandlerEventType.DELETE, REPOSITORY));
+    protocolResolver.getProtocols(REPOSITORY);
+
+    verify(repositoryServiceFactory, times(2)).create(REPOSITORY);
+  }
+
+  @Test
+  void shouldKeepProtocolsOnOtherRepositoryEvents() {
+    mockProtocols();
+
+    protocolResolver.getProtocols(REPOSITORY);
+    protocolResolver.handle(new RepositoryEvent(HandlerEventType.BEFORE_MODIFY, REPOSITORY));
+    protocolResolver.getProtocols(REPOSITORY);
+
+    verify(repositoryServiceFactory, times(1)).create(REPOSITORY);
+  }
+
+  @Test
+  void shouldResolveAgainAfterConfigurationChange() {
+    mockProtocols();
+
+    protocolResolver.getProtocols(REPOSITORY);
+    protocolResolver.handle(mock(ScmConfigurationChangedEvent.class));
+    protocolResolver.getProtocols(REPOSITORY);
+
+    verify(repositoryServiceFactory, times(2)).create(REPOSITORY);
+  }
+
+  private void mockProtocols() {
+    when(repositoryServiceFactory.create(REPOSITORY)).thenReturn(repositoryService);
+    when(repositoryService.getSupportedProtocols()).then(invocation -> Stream.of(new DummyScmProtocol()));
+  }
+
   static class DummyScmProtocol implements ScmProtocol {
 
     @Override
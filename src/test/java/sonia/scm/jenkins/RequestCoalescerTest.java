@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class RequestCoalescerTest {
+
+  private static final Duration WINDOW = Duration.ofSeconds(10);
+
+  @Mock
+  private ScheduledExecutorService scheduler;
+  @Mock
+  private RequestCoalescer.Target target;
+
+  private RequestCoalescer coalescer;
+
+  @BeforeEach
+  void setUpCoalescer() {
+    coalescer = new RequestCoalescer(scheduler, target);
+  }
+
+  @Test
+  void shouldDeliverFirstRequestImmediately() {
+    JenkinsRequest request = request("HeartOfGold");
+
+    coalescer.submit(1, request, WINDOW);
+
+    verify(target).deliver(1, request);
+    verify(scheduler).schedule(any(Runnable.class), eq(WINDOW.toMillis()), eq(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void shouldDeliverLastRequestAtEndOfWindow() {
+    JenkinsRequest first = request("HeartOfGold");
+    JenkinsRequest second = request("HeartOfGold");
+    JenkinsRequest third = request("HeartOfGold");
+
+    coalescer.submit(1, first, WINDOW);
+    coalescer.submit(2, second, WINDOW);
+    coalescer.submit(3, third, WINDOW);
+
+    verify(target).deliver(1, first);
+    verify(target).superseded(2);
+    verify(target, never()).deliverPending(3, third);
+
+    closeWindow(0);
+
+    verify(target).deliverPending(3, third);
+    verifyNoMoreInteractions(target);
+  }
+
+  @Test
+  void shouldOpenNewWindowAfterDeliveringWaitingRequest() {
+    JenkinsRequest first = request("HeartOfGold");
+    JenkinsRequest second = request("HeartOfGold");
+    JenkinsRequest third = request("HeartOfGold");
+
+    coalescer.submit(1, first, WINDOW);
+    coalescer.submit(2, second, WINDOW);
+    closeWindow(0);
+    coalescer.submit(3, third, WINDOW);
+
+    verify(target, never()).deliverPending(3, third);
+
+    closeWindow(1);
+
+    verify(target).deliverPending(3, third);
+  }
+
+  @Test
+  void shouldDeliverImmediatelyAfterQuietWindow() {
+    JenkinsRequest first = request("HeartOfGold");
+    JenkinsRequest second = request("HeartOfGold");
+
+    coalescer.submit(1, first, WINDOW);
+    closeWindow(0);
+    coalescer.submit(2, second, WINDOW);
+
+    verify(target).deliver(2, second);
+  }
+
+  @Test
+  void shouldNotCoalesceDifferentJobs() {
+    JenkinsRequest heartOfGold = request("HeartOfGold");
+    JenkinsRequest vogon = request("Vogon");
+
+    coalescer.submit(1, heartOfGold, WINDOW);
+    coalescer.submit(2, vogon, WINDOW);
+
+    verify(target).deliver(1, heartOfGold);
+    verify(target).deliver(2, vogon);
+  }
+
+  @Test
+  void shouldNotCoalesceDifferentParameters() {
+    JenkinsRequest first = request("HeartOfGold", "42");
+    JenkinsRequest second = request("HeartOfGold", "21");
+
+    coalescer.submit(1, first, WINDOW);
+    coalescer.submit(2, second, WINDOW);
+
+    verify(target).deliver(1, first);
+    verify(target).deliver(2, second);
+  }
+
+  private void closeWindow(int index) {
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler, times(index + 1)).schedule(captor.capture(), anyLong(), any());
+    List<Runnable> closes = captor.getAllValues();
+    closes.get(index).run();
+  }
+
+  private JenkinsRequest request(String job) {
+    return request(job, "42");
+  }
+
+  private JenkinsRequest request(String job, String token) {
+    return JenkinsRequest.builder()
+      .type("repository")
+      .serverUrl("http://hitchhiker.org/jenkins")
+      .url("http://hitchhiker.org/jenkins/job/" + job + "/build")
+      .parameter("token", token)
+      .coalescable(true)
+      .build();
+  }
+}
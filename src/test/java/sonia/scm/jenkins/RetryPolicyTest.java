@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryPolicyTest {
+
+  private static final String SERVER = "http://hitchhiker.org/jenkins";
+
+  private final RetryPolicy policy = new RetryPolicy(Duration.ofSeconds(1), Duration.ofSeconds(10));
+
+  @Test
+  void shouldRetryOnlyTemporaryStatusCodes() {
+    assertThat(RetryPolicy.isRetryable(502)).isTrue();
+    assertThat(RetryPolicy.isRetryable(503)).isTrue();
+    assertThat(RetryPolicy.isRetryable(504)).isTrue();
+    assertThat(RetryPolicy.isRetryable(200)).isFalse();
+    assertThat(RetryPolicy.isRetryable(401)).isFalse();
+    assertThat(RetryPolicy.isRetryable(404)).isFalse();
+    assertThat(RetryPolicy.isRetryable(500)).isFalse();
+  }
+
+  @Test
+  void shouldRetryOnlyTemporaryIoErrors() {
+    assertThat(RetryPolicy.isRetryable(new ConnectException("connection refused"))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new SocketException("connection reset"))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new SocketTimeoutException("read timed out"))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new UnknownHostException("hitchhiker.org"))).isFalse();
+    assertThat(RetryPolicy.isRetryable(new SSLHandshakeException("certificate expired"))).isFalse();
+    assertThat(RetryPolicy.isRetryable(new MalformedURLException("no protocol"))).isFalse();
+  }
+
+  @Test
+  void shouldGrowDelayExponentiallyWithJitter() {
+    assertThat(policy.failure(SERVER)).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+    assertThat(policy.failure(SERVER)).isBetween(Duration.ofSeconds(1), Duration.ofSeconds(2));
+    assertThat(policy.failure(SERVER)).isBetween(Duration.ofSeconds(2), Duration.ofSeconds(4));
+  }
+
+  @Test
+  void shouldCapDelay() {
+    for (int i = 0; i < 100; i++) {
+      policy.failure(SERVER);
+    }
+
+    assertThat(policy.failure(SERVER)).isBetween(Duration.ofSeconds(5), Duration.ofSeconds(10));
+  }
+
+  @Test
+  void shouldResetDelayAfterSuccess() {
+    policy.failure(SERVER);
+    policy.failure(SERVER);
+    policy.success(SERVER);
+
+    assertThat(policy.failure(SERVER)).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+  }
+
+  @Test
+  void shouldBackOffPerServer() {
+    policy.failure(SERVER);
+    policy.failure(SERVER);
+
+    assertThat(policy.failure("http://vogon.org/jenkins")).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+  }
+
+  @Test
+  void shouldIgnoreTrailingSlashOfServer() {
+    policy.failure(SERVER);
+    policy.success(SERVER + "/");
+
+    assertThat(policy.failure(SERVER + "/")).isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+    assertThat(policy.failure(SERVER)).isBetween(Duration.ofSeconds(1), Duration.ofSeconds(2));
+  }
+}
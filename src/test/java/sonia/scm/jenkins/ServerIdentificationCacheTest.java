@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sonia.scm.config.ScmConfigurationChangedEvent;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ServerIdentificationCacheTest {
+
+  private final AtomicInteger resolveCount = new AtomicInteger();
+  private final MutableClock clock = new MutableClock();
+
+  private ServerIdentificationCache cache;
+
+  @BeforeEach
+  void setUpCache() {
+    AdditionalServerIdentification ssh = () -> new AdditionalServerIdentification.Identification(
+      "ssh", "hog:" + (2221 + resolveCount.incrementAndGet())
+    );
+    cache = new ServerIdentificationCache(Collections.singleton(ssh), clock);
+  }
+
+  @Test
+  void shouldResolveIdentificationsOnlyOnce() {
+    cache.get();
+    cache.get();
+
+    assertThat(cache.get()).singleElement().satisfies(identification -> {
+      assertThat(identification.getName()).isEqualTo("ssh");
+      assertThat(identification.getValue()).isEqualTo("hog:2222");
+    });
+    assertThat(resolveCount).hasValue(1);
+  }
+
+  @Test
+  void shouldResolveAgainAfterMaxAge() {
+    cache.get();
+    clock.advance(ServerIdentificationCache.MAX_AGE.plus(Duration.ofSeconds(1)));
+
+    assertThat(cache.get()).extracting(AdditionalServerIdentification.Identification::getValue).containsExactly("hog:2223");
+  }
+
+  @Test
+  void shouldResolveAgainAfterConfigurationChange() {
+    cache.get();
+
+    cache.handle(mock(ScmConfigurationChangedEvent.class));
+
+    assertThat(cache.get()).extracting(AdditionalServerIdentification.Identification::getValue).containsExactly("hog:2223");
+  }
+}
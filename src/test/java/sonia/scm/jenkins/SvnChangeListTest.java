@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package sonia.scm.jenkins;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+import sonia.scm.repository.Added;
+import sonia.scm.repository.Copied;
+import sonia.scm.repository.Modification;
+import sonia.scm.repository.Modifications;
+import sonia.scm.repository.Modified;
+import sonia.scm.repository.Removed;
+import sonia.scm.repository.Renamed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SvnChangeListTest {
+
+  @Test
+  void shouldListAllPathsWithoutLimit() {
+    Modifications modifications = new Modifications("1", ImmutableList.of(
+      new Added(".gitignore"),
+      new Modified("Jenkinsfile"),
+      new Renamed("README.md", "readme.md"),
+      new Removed("pom.xml"),
+      new Copied("copy.cat", "copy.dog")
+    ));
+
+    assertThat(SvnChangeList.of(modifications, 0)).isEqualTo(
+      "A   .gitignore\n" +
+        "A   copy.dog\n" +
+        "U   Jenkinsfile\n" +
+        "U   readme.md\n" +
+        "D   pom.xml\n"
+    );
+  }
+
+  @Test
+  void shouldListAllPathsWithinLimit() {
+    Modifications modifications = modifications("trunk/a.c", "trunk/b.c");
+
+    assertThat(SvnChangeList.of(modifications, 2)).isEqualTo("U   trunk/a.c\nU   trunk/b.c\n");
+  }
+
+  @Test
+  void shouldReduceToDeepestDirectoriesWithinLimit() {
+    Modifications modifications = modifications(
+      "trunk/vendor/a/1.c",
+      "trunk/vendor/a/2.c",
+      "trunk/vendor/b/1.c",
+      "trunk/vendor/c/1.c",
+      "trunk/vendor/c/d/1.c"
+    );
+
+    assertThat(SvnChangeList.of(modifications, 3)).isEqualTo(
+      "U   trunk/vendor/a\nU   trunk/vendor/b\nU   trunk/vendor/c\n"
+    );
+  }
+
+  @Test
+  void shouldReduceToCommonParent() {
+    Modifications modifications = modifications(
+      "trunk/vendor/a/1.c",
+      "trunk/vendor/b/1.c",
+      "trunk/vendor/c/1.c"
+    );
+
+    assertThat(SvnChangeList.of(modifications, 2)).isEqualTo("U   trunk/vendor\n");
+  }
+
+  @Test
+  void shouldNotUsePartialDirectoryNamesAsCommonParent() {
+    Modifications modifications = modifications(
+      "trunk/vendor1/a.c",
+      "trunk/vendor2/a.c",
+      "trunk/vendor3/a.c"
+    );
+
+    assertThat(SvnChangeList.of(modifications, 2)).isEqualTo("U   trunk\n");
+  }
+
+  @Test
+  void shouldNeverReduceToRepositoryRoot() {
+    Modifications modifications = modifications(
+      "trunk/a.c",
+      "branches/feature/b.c",
+      "tags/1.0/c.c",
+      "README"
+    );
+
+    assertThat(SvnChangeList.of(modifications, 2)).isEqualTo(
+      "U   trunk\nU   branches\nU   tags\nU   README\n"
+    );
+  }
+
+  @Test
+  void shouldReduceHugeChangeList() {
+    List<Modification> paths = new ArrayList<>();
+    for (int i = 0; i < 200_000; i++) {
+      paths.add(new Added("trunk/vendor/lib" + (i % 10) + "/file" + i + ".c"));
+    }
+
+    String content = SvnChangeList.of(new Modifications("1", paths), 100);
+
+    assertThat(content.split("\n"))
+      .hasSize(10)
+      .contains("U   trunk/vendor/lib0", "U   trunk/vendor/lib9");
+  }
+
+  private Modifications modifications(String... paths) {
+    List<Modification> modifications = new ArrayList<>();
+    for (String path : paths) {
+      modifications.add(new Modified(path));
+    }
+    return new Modifications("1", modifications);
+  }
+}